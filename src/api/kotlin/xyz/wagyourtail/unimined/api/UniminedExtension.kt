@@ -9,6 +9,7 @@ import org.jetbrains.annotations.ApiStatus
 import xyz.wagyourtail.unimined.api.source.task.MigrateMappingsTask
 import xyz.wagyourtail.unimined.api.minecraft.MinecraftConfig
 import xyz.wagyourtail.unimined.api.minecraft.patch.fabric.FabricLikeApiExtension
+import xyz.wagyourtail.unimined.util.FileStampIndex
 import xyz.wagyourtail.unimined.util.FinalizeOnRead
 import xyz.wagyourtail.unimined.util.sourceSets
 import java.nio.file.Path
@@ -241,6 +242,8 @@ abstract class UniminedExtension(val project: Project) {
             project.gradle.gradleUserHomeDir.toPath().resolve("caches").resolve("unimined").createDirectories()
         } else {
             project.rootProject.projectDir.toPath().resolve(".gradle").resolve("unimined").createDirectories()
+        }.also {
+            FileStampIndex.load(it.resolve("file-stamps.txt"))
         }
     }
 
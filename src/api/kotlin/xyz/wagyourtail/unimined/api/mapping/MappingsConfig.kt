@@ -584,6 +584,16 @@ abstract class MappingsConfig(val project: Project, val minecraft: MinecraftConf
         remapLocals: Boolean = false
     ): (IMappingProvider.MappingAcceptor) -> Unit
 
+    /**
+     * mappings for remapping straight along [path] (starting namespace first) in a single pass,
+     * or null if the path can't be composed and has to be remapped one step at a time.
+     */
+    @ApiStatus.Internal
+    abstract fun getComposedTRMappings(
+        path: List<Namespace>,
+        remapLocals: Boolean = false
+    ): ((IMappingProvider.MappingAcceptor) -> Unit)?
+
     @get:ApiStatus.Internal
     abstract val combinedNames: String
     abstract val stub: MemoryMapping
@@ -45,6 +45,14 @@ interface MinecraftPatcher {
         }
     }
 
+    /**
+     * how many classes may be read and merging at once when merging the client and server jars.
+     * defaults to the `unimined.mergeWindow` project property, or 4 per processor.
+     * @since 1.3.12
+     */
+    @set:ApiStatus.Experimental
+    var mergeWindow: Int
+
     @ApiStatus.Internal
     fun beforeRemapJarTask(remapJarTask: AbstractRemapJarTask, input: Path): Path
 
@@ -25,7 +25,15 @@ interface AccessTransformerPatcher : MinecraftPatcher, AccessConvert {
     var accessTransformerPaths: List<String>
 
     /**
-     * dependency for access transformer processor.
+     * apply access transformers with asm in the gradle daemon, instead of running [dependency] in a new jvm.
+     * defaults to true, unless the `unimined.forkAccessTransformers` project property is `true`.
+     * @since 1.3.12
+     */
+    @set:ApiStatus.Experimental
+    var inProcessAccessTransformers: Boolean
+
+    /**
+     * dependency for access transformer processor, only used if [inProcessAccessTransformers] is false.
      */
     @set:ApiStatus.Experimental
     var dependency: Dependency
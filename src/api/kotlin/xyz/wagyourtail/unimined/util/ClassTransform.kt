@@ -0,0 +1,134 @@
+package xyz.wagyourtail.unimined.util
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream
+import org.apache.commons.compress.archivers.zip.ZipFile
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.outputStream
+
+/**
+ * a class level transform, which can share a single read and write of each class with other transforms.
+ */
+class ClassTransform(
+    /**
+     * internal names of the classes to transform, or null for every class.
+     */
+    val targets: Set<String>?,
+    val visitor: (className: String, next: ClassVisitor) -> ClassVisitor,
+    /**
+     * called once with the targets that weren't in the jar.
+     */
+    val onMissing: (Set<String>) -> Unit = {},
+    /**
+     * called when the transform fails on a class, which is then written without it.
+     */
+    val onError: (className: String, exception: Exception) -> Unit = { _, e -> throw e },
+) {
+
+    fun appliesTo(className: String) = targets == null || className in targets
+
+}
+
+/**
+ * copy this jar to [output], running every class targeted by [transforms] through them as one visitor chain.
+ *
+ * targeted classes are transformed on the common pool, with at most [window] of them in flight, and every entry is
+ * written in its original order. everything else is copied still compressed, without being inflated.
+ * if the chain fails on a class, the transforms are retried on it one by one, so that only the failing ones are
+ * skipped. [ClassTransform.onError] may be called from any thread.
+ */
+fun Path.transformClasses(
+    output: Path,
+    transforms: List<ClassTransform>,
+    window: Int = Runtime.getRuntime().availableProcessors() * 4
+) {
+    val missing = transforms.map { it.targets?.toMutableSet() }
+    try {
+        Files.newByteChannel(this).use { sbc ->
+            ZipFile.builder().setIgnoreLocalFileHeader(true).setSeekableByteChannel(sbc).get().use { zip ->
+                ZipArchiveOutputStream(output.outputStream()).use { zipOutput ->
+                    // entries waiting to be written, in order, with the transformed bytes if they're a targeted class
+                    val pending = ArrayDeque<Pair<ZipArchiveEntry, CompletableFuture<ByteArray>?>>()
+                    fun writeNext() {
+                        val (entry, future) = pending.removeFirst()
+                        if (future == null) {
+                            zip.getRawInputStream(entry).use { zipOutput.addRawArchiveEntry(entry, it) }
+                            return
+                        }
+                        val bytes = try {
+                            future.join()
+                        } catch (e: CompletionException) {
+                            throw e.cause ?: e
+                        }
+                        zipOutput.putArchiveEntry(ZipArchiveEntry(entry.name))
+                        zipOutput.write(bytes)
+                        zipOutput.closeArchiveEntry()
+                    }
+                    var inFlight = 0
+                    for (entry in zip.entries) {
+                        if (entry.isDirectory) continue
+                        val path = entry.name
+                        val className = path.removeSuffix(".class")
+                        val applicable = if (path.endsWith(".class")) {
+                            transforms.filterIndexed { i, transform ->
+                                missing[i]?.remove(className)
+                                transform.appliesTo(className)
+                            }
+                        } else emptyList()
+                        if (applicable.isEmpty()) {
+                            pending.addLast(entry to null)
+                        } else {
+                            val bytes = zip.getInputStream(entry).use { it.readBytes() }
+                            pending.addLast(entry to CompletableFuture.supplyAsync { transformClass(className, bytes, applicable) })
+                            inFlight++
+                        }
+                        // raw entries are only read when written, so only transformed classes count towards the window
+                        while (pending.isNotEmpty() && (inFlight >= window.coerceAtLeast(1) || pending.first().second?.isDone != false)) {
+                            if (pending.first().second != null) inFlight--
+                            writeNext()
+                        }
+                    }
+                    while (pending.isNotEmpty()) writeNext()
+                }
+            }
+        }
+    } catch (e: Exception) {
+        output.deleteIfExists()
+        throw e
+    }
+    transforms.forEachIndexed { i, transform ->
+        val notFound = missing[i]
+        if (!notFound.isNullOrEmpty()) transform.onMissing(notFound)
+    }
+}
+
+private fun transformClass(className: String, bytes: ByteArray, transforms: List<ClassTransform>): ByteArray {
+    return try {
+        applyClassTransforms(className, bytes, transforms)
+    } catch (e: Exception) {
+        transforms.fold(bytes) { current, transform ->
+            try {
+                applyClassTransforms(className, current, listOf(transform))
+            } catch (e: Exception) {
+                transform.onError(className, e)
+                current
+            }
+        }
+    }
+}
+
+private fun applyClassTransforms(className: String, bytes: ByteArray, transforms: List<ClassTransform>): ByteArray {
+    val reader = ClassReader(bytes)
+    val writer = ClassWriter(reader, 0)
+    // the first transform sees the class first
+    val visitor = transforms.foldRight(writer as ClassVisitor) { transform, next -> transform.visitor(className, next) }
+    reader.accept(visitor, 0)
+    return writer.toByteArray()
+}
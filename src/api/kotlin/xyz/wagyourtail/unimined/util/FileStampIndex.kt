@@ -0,0 +1,123 @@
+package xyz.wagyourtail.unimined.util
+
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.io.path.bufferedReader
+import kotlin.io.path.bufferedWriter
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.exists
+
+/**
+ * remembers file digests by (path, size, mtime, inode), so files that haven't changed are never hashed twice.
+ *
+ * entries are appended to a log in the global cache as they're computed, one per line:
+ * ```
+ * sha1	size	mtime	fileKey	path
+ * ```
+ * later lines win, and the log is rewritten once it is mostly stale entries.
+ */
+object FileStampIndex {
+    /**
+     * files modified this recently aren't stamped, as a second write in the same mtime tick would keep the stamp.
+     */
+    private const val RACY_WINDOW_MS = 2000L
+
+    private data class Stamp(val size: Long, val mtime: Long, val fileKey: String)
+
+    private val entries = ConcurrentHashMap<String, Pair<Stamp, String>>()
+
+    @Volatile
+    private var indexFile: Path? = null
+    private var logged = 0
+
+    /**
+     * start persisting stamps to [file], loading any already in it.
+     */
+    @Synchronized
+    fun load(file: Path) {
+        if (indexFile == file) return
+        indexFile = file
+        logged = 0
+        if (!file.exists()) return
+        try {
+            file.bufferedReader().useLines { lines ->
+                for (line in lines) {
+                    val parts = line.split('\t', limit = 5)
+                    if (parts.size != 5) continue
+                    val size = parts[1].toLongOrNull() ?: continue
+                    val mtime = parts[2].toLongOrNull() ?: continue
+                    entries[parts[4]] = Stamp(size, mtime, parts[3]) to parts[0]
+                    logged++
+                }
+            }
+        } catch (e: IOException) {
+            // it's only a cache, start over
+        }
+        if (logged > entries.size * 2 + 1024) {
+            compact(file)
+        }
+    }
+
+    fun sha1(path: Path): String {
+        val absolute = path.toAbsolutePath().normalize()
+        val attributes = Files.readAttributes(absolute, BasicFileAttributes::class.java)
+        val stamp = Stamp(
+            attributes.size(),
+            attributes.lastModifiedTime().toMillis(),
+            attributes.fileKey()?.toString() ?: ""
+        )
+        val key = absolute.toString()
+        entries[key]?.let { (known, digest) ->
+            if (known == stamp) return digest
+        }
+        val digest = absolute.streamSha1()
+        if (System.currentTimeMillis() - stamp.mtime > RACY_WINDOW_MS) {
+            entries[key] = stamp to digest
+            append(key, stamp, digest)
+        }
+        return digest
+    }
+
+    @Synchronized
+    private fun append(key: String, stamp: Stamp, digest: String) {
+        val file = indexFile ?: return
+        if ('\n' in key || '\t' in stamp.fileKey) return
+        try {
+            Files.createDirectories(file.parent)
+            // a single write per line, so concurrent builds appending to the same log don't interleave
+            Files.write(
+                file,
+                "$digest\t${stamp.size}\t${stamp.mtime}\t${stamp.fileKey}\t$key\n".toByteArray(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+            )
+            logged++
+        } catch (e: IOException) {
+            // it's only a cache
+        }
+    }
+
+    private fun compact(file: Path) {
+        val temp = Files.createTempFile(file.parent, file.fileName.toString(), ".tmp")
+        try {
+            temp.bufferedWriter().use { writer ->
+                for ((key, value) in entries) {
+                    val (stamp, digest) = value
+                    if ('\n' in key || '\t' in stamp.fileKey) continue
+                    writer.write("$digest\t${stamp.size}\t${stamp.mtime}\t${stamp.fileKey}\t$key\n")
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            logged = entries.size
+        } catch (e: IOException) {
+            // it's only a cache
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+}
@@ -216,13 +216,7 @@ fun testSha1(size: Long, sha1: String?, path: Path, expireTime: Duration = 1.day
                 // fallback: expire if older than a day
                 return path.getLastModifiedTime().toMillis() > System.currentTimeMillis() - expireTime.inWholeMilliseconds
             }
-            val digestSha1 = MessageDigest.getInstance("SHA-1")
-            path.inputStream().use {
-                digestSha1.update(it.readBytes())
-            }
-            val hashBytes = digestSha1.digest()
-            val hash = hashBytes.joinToString("") { String.format("%02x", it) }
-            if (hash.equals(sha1, ignoreCase = true)) {
+            if (path.getSha1().equals(sha1, ignoreCase = true)) {
                 return true
             }
         }
@@ -230,10 +224,23 @@ fun testSha1(size: Long, sha1: String?, path: Path, expireTime: Duration = 1.day
     return false
 }
 
-fun Path.getSha1(): String {
+/**
+ * sha1 of the file, reused from [FileStampIndex] if the file hasn't changed since it was last hashed.
+ */
+fun Path.getSha1(): String = FileStampIndex.sha1(this)
+
+/**
+ * sha1 of the file, always read from disk.
+ */
+fun Path.streamSha1(): String {
     val digestSha1 = MessageDigest.getInstance("SHA-1")
     inputStream().use {
-        digestSha1.update(it.readBytes())
+        val buffer = ByteArray(64 * 1024)
+        while (true) {
+            val read = it.read(buffer)
+            if (read == -1) break
+            digestSha1.update(buffer, 0, read)
+        }
     }
     val hashBytes = digestSha1.digest()
     return hashBytes.joinToString("") { String.format("%02x", it) }
@@ -0,0 +1,259 @@
+package net.fabricmc.mappingio.format
+
+import net.fabricmc.mappingio.MappedElementKind
+import net.fabricmc.mappingio.MappingFlag
+import net.fabricmc.mappingio.MappingVisitor
+import java.io.IOException
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * reads the binary cache format written by [BinaryMappingWriter].
+ */
+object BinaryMappingReader {
+
+    fun read(path: Path, visitor: MappingVisitor) {
+        open(path).accept(visitor)
+    }
+
+    fun read(bytes: ByteArray, visitor: MappingVisitor) {
+        open(bytes).accept(visitor)
+    }
+
+    fun open(path: Path): BinaryMappingFile {
+        // read onto the heap, a mapped file stays locked on windows until the buffer is collected,
+        // which would block replacing or deleting the cache in the same daemon
+        return open(Files.readAllBytes(path))
+    }
+
+    fun open(bytes: ByteArray): BinaryMappingFile {
+        return truncatedAsIOException {
+            BinaryMappingFile(ByteBuffer.wrap(bytes))
+        }
+    }
+
+    /**
+     * a corrupt or truncated file reads out of bounds, report that like any other unreadable file.
+     */
+    internal inline fun <T> truncatedAsIOException(read: () -> T): T {
+        try {
+            return read()
+        } catch (e: IndexOutOfBoundsException) {
+            throw IOException("invalid binary mapping file: truncated", e)
+        } catch (e: BufferUnderflowException) {
+            throw IOException("invalid binary mapping file: truncated", e)
+        } catch (e: NegativeArraySizeException) {
+            throw IOException("invalid binary mapping file: bad string offsets", e)
+        }
+    }
+
+}
+
+/**
+ * an in-memory view of a binary mapping cache, the file isn't held open.
+ * strings are decoded on first use, and classes can be visited one at a time through [acceptClass].
+ */
+class BinaryMappingFile(private val buffer: ByteBuffer) {
+    val namespaces: List<String>
+    val srcNamespace: String
+        get() = namespaces[0]
+    val dstNamespaces: List<String>
+        get() = namespaces.subList(1, namespaces.size)
+
+    private val stringOffsets: Int
+    private val stringData: Int
+    private val stringDataLength: Int
+    private val strings: Array<String?>
+
+    val classCount: Int
+    private val classIndex: Int
+    private val classData: Int
+
+    init {
+        var pos = 0
+        if (buffer.getInt(pos) != BinaryMappingWriter.MAGIC) throw IOException("invalid binary mapping file: bad magic")
+        pos += 4
+        val version = buffer.getInt(pos)
+        if (version != BinaryMappingWriter.VERSION) throw IOException("unsupported binary mapping file version $version")
+        pos += 4
+
+        val nsCount = buffer.getInt(pos)
+        pos += 4
+        val nsIds = IntArray(nsCount) { buffer.getInt(pos + it * 4) }
+        pos += nsCount * 4
+
+        val stringCount = buffer.getInt(pos)
+        stringDataLength = buffer.getInt(pos + 4)
+        pos += 8
+        strings = arrayOfNulls(stringCount)
+        stringOffsets = pos
+        pos += stringCount * 4
+        stringData = pos
+        pos += stringDataLength
+
+        classCount = buffer.getInt(pos)
+        pos += 4
+        classIndex = pos
+        pos += classCount * 8
+        val classDataLength = buffer.getInt(pos)
+        pos += 4
+        classData = pos
+        if (classData + classDataLength > buffer.limit()) throw IOException("invalid binary mapping file: truncated")
+
+        namespaces = nsIds.map { getString(it)!! }
+    }
+
+    fun getString(id: Int): String? {
+        if (id == BinaryMappingWriter.NULL_STRING) return null
+        strings[id]?.let { return it }
+        val start = buffer.getInt(stringOffsets + id * 4)
+        val end = if (id + 1 < strings.size) buffer.getInt(stringOffsets + (id + 1) * 4) else stringDataLength
+        val bytes = ByteArray(end - start)
+        val view = buffer.duplicate()
+        view.position(stringData + start)
+        view.get(bytes)
+        return String(bytes, Charsets.UTF_8).also { strings[id] = it }
+    }
+
+    fun getClassName(index: Int): String = getString(buffer.getInt(classIndex + index * 8))!!
+
+    /**
+     * @return the index of the class with the given source name, or -1 if it is not present
+     */
+    fun findClass(srcName: String): Int {
+        var low = 0
+        var high = classCount - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val cmp = getClassName(mid).compareTo(srcName)
+            when {
+                cmp < 0 -> low = mid + 1
+                cmp > 0 -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -1
+    }
+
+    /**
+     * @throws IOException if the file turns out to be corrupt
+     */
+    fun accept(visitor: MappingVisitor) {
+        while (true) {
+            if (visitor.visitHeader()) {
+                visitor.visitNamespaces(srcNamespace, dstNamespaces)
+            }
+
+            if (visitor.visitContent()) {
+                for (i in 0 until classCount) {
+                    acceptClass(i, visitor)
+                }
+            }
+
+            if (visitor.visitEnd()) break
+            if (!visitor.flags.contains(MappingFlag.NEEDS_MULTIPLE_PASSES)) {
+                throw IllegalStateException("repeated visitation requested without NEEDS_MULTIPLE_PASSES")
+            }
+        }
+    }
+
+    /**
+     * visit a single class and its members, without the surrounding header/content/end calls.
+     * @throws IOException if the class's data turns out to be corrupt
+     */
+    fun acceptClass(index: Int, visitor: MappingVisitor) {
+        BinaryMappingReader.truncatedAsIOException {
+            readClass(index, visitor)
+        }
+    }
+
+    private fun readClass(index: Int, visitor: MappingVisitor) {
+        val reader = Cursor(classData + buffer.getInt(classIndex + index * 8 + 4))
+        val dstCount = namespaces.size - 1
+
+        if (!visitor.visitClass(getClassName(index))) return
+        reader.visitDstNames(visitor, MappedElementKind.CLASS, dstCount)
+        val classComment = reader.string()
+        if (!visitor.visitElementContent(MappedElementKind.CLASS)) return
+        if (classComment != null) visitor.visitComment(MappedElementKind.CLASS, classComment)
+
+        repeat(reader.int()) {
+            val name = reader.string()!!
+            val desc = reader.string()
+            if (visitor.visitField(name, desc)) {
+                reader.visitDstNames(visitor, MappedElementKind.FIELD, dstCount)
+                val comment = reader.string()
+                if (visitor.visitElementContent(MappedElementKind.FIELD) && comment != null) {
+                    visitor.visitComment(MappedElementKind.FIELD, comment)
+                }
+            } else {
+                reader.skip(dstCount + 1)
+            }
+        }
+
+        repeat(reader.int()) {
+            val name = reader.string()!!
+            val desc = reader.string()
+            var visitContent = visitor.visitMethod(name, desc)
+            if (visitContent) {
+                reader.visitDstNames(visitor, MappedElementKind.METHOD, dstCount)
+                val comment = reader.string()
+                visitContent = visitor.visitElementContent(MappedElementKind.METHOD)
+                if (visitContent && comment != null) visitor.visitComment(MappedElementKind.METHOD, comment)
+            } else {
+                reader.skip(dstCount + 1)
+            }
+
+            repeat(reader.int()) {
+                val argPosition = reader.int()
+                val lvIndex = reader.int()
+                val argName = reader.string()
+                if (visitContent && visitor.visitMethodArg(argPosition, lvIndex, argName)) {
+                    reader.visitDstNames(visitor, MappedElementKind.METHOD_ARG, dstCount)
+                    val comment = reader.string()
+                    if (visitor.visitElementContent(MappedElementKind.METHOD_ARG) && comment != null) {
+                        visitor.visitComment(MappedElementKind.METHOD_ARG, comment)
+                    }
+                } else {
+                    reader.skip(dstCount + 1)
+                }
+            }
+
+            repeat(reader.int()) {
+                val lvtRowIndex = reader.int()
+                val lvIndex = reader.int()
+                val startOpIdx = reader.int()
+                val varName = reader.string()
+                if (visitContent && visitor.visitMethodVar(lvtRowIndex, lvIndex, startOpIdx, varName)) {
+                    reader.visitDstNames(visitor, MappedElementKind.METHOD_VAR, dstCount)
+                    val comment = reader.string()
+                    if (visitor.visitElementContent(MappedElementKind.METHOD_VAR) && comment != null) {
+                        visitor.visitComment(MappedElementKind.METHOD_VAR, comment)
+                    }
+                } else {
+                    reader.skip(dstCount + 1)
+                }
+            }
+        }
+    }
+
+    private inner class Cursor(private var pos: Int) {
+
+        fun int(): Int = buffer.getInt(pos).also { pos += 4 }
+
+        fun string(): String? = getString(int())
+
+        fun skip(ints: Int) {
+            pos += ints * 4
+        }
+
+        fun visitDstNames(visitor: MappingVisitor, kind: MappedElementKind, dstCount: Int) {
+            for (ns in 0 until dstCount) {
+                val name = string() ?: continue
+                visitor.visitDstName(kind, ns, name)
+            }
+        }
+    }
+}
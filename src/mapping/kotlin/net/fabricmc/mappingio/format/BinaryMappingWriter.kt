@@ -0,0 +1,147 @@
+package net.fabricmc.mappingio.format
+
+import net.fabricmc.mappingio.tree.MappingTreeView
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.writeBytes
+
+/**
+ * writes a mapping tree in the binary cache format read by [BinaryMappingReader].
+ *
+ * layout (all ints big-endian):
+ * ```
+ * magic, version
+ * namespace count, namespace string ids (src first)
+ * string count, string data length, string offsets, utf-8 string data
+ * class count, (src name id, class data offset) sorted by src name
+ * class data length, class data
+ * ```
+ * every name, descriptor and comment is stored once in the string pool and referenced by index,
+ * `-1` is used for missing names.
+ */
+object BinaryMappingWriter {
+    const val MAGIC = 0x554D4D42 // UMMB
+    const val VERSION = 1
+    const val NULL_STRING = -1
+
+    fun write(tree: MappingTreeView, output: Path) {
+        write(toByteArray(tree), output)
+    }
+
+    fun write(bytes: ByteArray, output: Path) {
+        val temp = Files.createTempFile(output.parent, output.fileName.toString(), ".tmp")
+        try {
+            temp.writeBytes(bytes)
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+
+    fun toByteArray(tree: MappingTreeView): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { write(tree, it) }
+        return bytes.toByteArray()
+    }
+
+    fun write(tree: MappingTreeView, output: DataOutputStream) {
+        val pool = StringPool()
+        val namespaces = listOf(tree.srcNamespace) + tree.dstNamespaces
+        val dstCount = tree.dstNamespaces.size
+
+        val classes = tree.classes.sortedBy { it.srcName }
+        val classOffsets = IntArray(classes.size)
+
+        val classBytes = ByteArrayOutputStream()
+        val data = DataOutputStream(classBytes)
+        for ((i, clazz) in classes.withIndex()) {
+            classOffsets[i] = data.size()
+            for (ns in 0 until dstCount) data.writeInt(pool[clazz.getDstName(ns)])
+            data.writeInt(pool[clazz.comment])
+
+            data.writeInt(clazz.fields.size)
+            for (field in clazz.fields) {
+                data.writeInt(pool[field.srcName])
+                data.writeInt(pool[field.srcDesc])
+                for (ns in 0 until dstCount) data.writeInt(pool[field.getDstName(ns)])
+                data.writeInt(pool[field.comment])
+            }
+
+            data.writeInt(clazz.methods.size)
+            for (method in clazz.methods) {
+                data.writeInt(pool[method.srcName])
+                data.writeInt(pool[method.srcDesc])
+                for (ns in 0 until dstCount) data.writeInt(pool[method.getDstName(ns)])
+                data.writeInt(pool[method.comment])
+
+                data.writeInt(method.args.size)
+                for (arg in method.args) {
+                    data.writeInt(arg.argPosition)
+                    data.writeInt(arg.lvIndex)
+                    data.writeInt(pool[arg.srcName])
+                    for (ns in 0 until dstCount) data.writeInt(pool[arg.getDstName(ns)])
+                    data.writeInt(pool[arg.comment])
+                }
+
+                data.writeInt(method.vars.size)
+                for (lv in method.vars) {
+                    data.writeInt(lv.lvtRowIndex)
+                    data.writeInt(lv.lvIndex)
+                    data.writeInt(lv.startOpIdx)
+                    data.writeInt(pool[lv.srcName])
+                    for (ns in 0 until dstCount) data.writeInt(pool[lv.getDstName(ns)])
+                    data.writeInt(pool[lv.comment])
+                }
+            }
+        }
+        data.flush()
+
+        val nsIds = namespaces.map { pool[it] }
+        val classNameIds = classes.map { pool[it.srcName] }
+
+        output.writeInt(MAGIC)
+        output.writeInt(VERSION)
+
+        output.writeInt(nsIds.size)
+        for (id in nsIds) output.writeInt(id)
+
+        pool.write(output)
+
+        output.writeInt(classes.size)
+        for (i in classes.indices) {
+            output.writeInt(classNameIds[i])
+            output.writeInt(classOffsets[i])
+        }
+
+        output.writeInt(classBytes.size())
+        classBytes.writeTo(output)
+        output.flush()
+    }
+
+    private class StringPool {
+        private val ids = LinkedHashMap<String, Int>()
+
+        operator fun get(value: String?): Int {
+            if (value == null) return NULL_STRING
+            return ids.getOrPut(value) { ids.size }
+        }
+
+        fun write(output: DataOutputStream) {
+            val encoded = ids.keys.map { it.toByteArray(Charsets.UTF_8) }
+            output.writeInt(encoded.size)
+            output.writeInt(encoded.sumOf { it.size })
+            var offset = 0
+            for (bytes in encoded) {
+                output.writeInt(offset)
+                offset += bytes.size
+            }
+            for (bytes in encoded) {
+                output.write(bytes)
+            }
+        }
+    }
+}
@@ -178,8 +178,9 @@ object CSrgReader {
             packages += "$srcPackage*" to dstPackage
         } while (reader.nextLine(0))
 
+        val matcher = PackageMatcher(packages)
         return { visitor ->
-            PackageRemappingVisitor(visitor, targetNamespaces, packages)
+            PackageRemappingVisitor(visitor, targetNamespaces, matcher)
         }
     }
 
@@ -3,75 +3,44 @@ package net.fabricmc.mappingio.format
 import net.fabricmc.mappingio.MappingVisitor
 import net.fabricmc.mappingio.adapter.ForwardingMappingVisitor
 import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
 import org.objectweb.asm.Opcodes
-import org.objectweb.asm.tree.ClassNode
-import org.objectweb.asm.tree.MethodInsnNode
-import org.objectweb.asm.tree.MethodNode
-import xyz.wagyourtail.unimined.util.defaultedMapOf
-import xyz.wagyourtail.unimined.util.readZipInputStreamFor
+import xyz.wagyourtail.unimined.util.forEachInZip
 import java.nio.file.Path
 
 class ChildMethodStripper(next: MappingVisitor, val minecraft: Path) : ForwardingMappingVisitor(next) {
 
-    val classMap = defaultedMapOf<String, ClassNode?> { srcName ->
-        val cNode = ClassNode()
-        try {
-            minecraft.readZipInputStreamFor("$srcName.class") { ClassReader(it) }.accept(cNode, ClassReader.SKIP_CODE)
-            cNode
-        } catch (e: IllegalArgumentException) {
-            null
-        }
-    }
+    val hierarchy by lazy { ClassHierarchyIndex.of(minecraft) }
 
     var cName: String? = null
 
-    fun getClassWithCode(srcName: String): ClassNode? {
-        val cNode = ClassNode()
-        try {
-            minecraft.readZipInputStreamFor("$srcName.class") { ClassReader(it) }.accept(cNode, ClassReader.SKIP_DEBUG)
-        } catch (e: IllegalArgumentException) {
-            return null
-        }
-
-        // copy to class map for speed
-        val copy = ClassNode()
-        for (method in cNode.methods) {
-            if (method.instructions.size() > 0) {
-                copy.visitMethod(method.access, method.name, method.desc, method.signature, method.exceptions.toTypedArray())
-            }
+    /**
+     * name + desc of every method a bridge in the class calls, by class.
+     * read in one pass over the jar, which is closed again before the first method is checked.
+     */
+    private val bridgeTargets: Map<String, Set<String>> by lazy {
+        val bridgeTargets = mutableMapOf<String, Set<String>>()
+        minecraft.forEachInZip { path, stream ->
+            if (!path.endsWith(".class")) return@forEachInZip
+            val targets = mutableSetOf<String>()
+            ClassReader(stream).accept(object : ClassVisitor(Opcodes.ASM9) {
+                override fun visitMethod(access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
+                    if (access and Opcodes.ACC_BRIDGE == 0) return null
+                    return object : MethodVisitor(Opcodes.ASM9) {
+                        override fun visitMethodInsn(opcode: Int, owner: String, name: String, descriptor: String, isInterface: Boolean) {
+                            targets.add(name + descriptor)
+                        }
+                    }
+                }
+            }, ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+            if (targets.isNotEmpty()) bridgeTargets[path.removeSuffix(".class")] = targets
         }
-        copy.interfaces = cNode.interfaces
-        copy.superName = cNode.superName
-        copy.name = cNode.name
-        classMap[srcName] = copy
-
-        return cNode
+        bridgeTargets
     }
 
-    /*
-    def getParentNodes(cNode):
-        currentNode = classMap[cNode]
-        while currentNode != null:
-            yield currentNode
-            for interface in currentNode.interfaces:
-                intf = classMap[interface]
-                if intf != null:
-                    for p in getParentNodes(intf):
-                        yield p
-            currentNode = classMap[currentNode.superName]
-     */
-
-    fun getParentNodes(className: String): Sequence<ClassNode> {
-        var currentNode: ClassNode? = classMap[className] ?: return emptySequence()
-        return generateSequence {
-            val c = currentNode
-            currentNode = currentNode?.let { classMap[it.superName] }
-            c
-        }.flatMap { node ->
-            listOf(node) + node.interfaces
-                .mapNotNull { classMap[it] }
-                .flatMap { listOf(it) + getParentNodes(it.name) }
-        }.drop(1)
+    fun getBridgeTargets(srcName: String): Set<String> {
+        return bridgeTargets[srcName] ?: emptySet()
     }
 
     override fun visitClass(srcName: String): Boolean {
@@ -79,29 +48,17 @@ class ChildMethodStripper(next: MappingVisitor, val minecraft: Path) : Forwardin
         return super.visitClass(srcName)
     }
 
-    fun isPrivate(mn: MethodNode): Boolean {
-        return mn.access and Opcodes.ACC_PRIVATE != 0
-    }
-
     override fun visitMethod(srcName: String, srcDesc: String): Boolean {
         // check if there's a bridge pointing at the current method and then just yeet if so
-        getClassWithCode(cName!!)?.methods?.firstOrNull {
-            it.access and Opcodes.ACC_BRIDGE != 0 && it.instructions.any {
-                it is MethodInsnNode && it.name == srcName && it.desc == srcDesc
-            }
-        }?.let {
+        if ((srcName + srcDesc) in getBridgeTargets(cName!!)) {
             return false
         }
 
         // find if method is on a parent class
-        getParentNodes(cName!!).firstOrNull { clazz ->
-            clazz.methods.any {
-                it.name == srcName && it.desc == srcDesc && !isPrivate(it)
-            }
-        }?.let {
+        if (hierarchy.isInherited(cName!!, srcName, srcDesc)) {
             return false
         }
 
         return super.visitMethod(srcName, srcDesc)
     }
-}
\ No newline at end of file
+}
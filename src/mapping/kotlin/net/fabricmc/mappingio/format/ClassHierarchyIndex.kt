@@ -0,0 +1,205 @@
+package net.fabricmc.mappingio.format
+
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.FieldVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import xyz.wagyourtail.unimined.util.FileStampIndex
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.ConcurrentHashMap
+import java.util.stream.IntStream
+import java.util.zip.ZipFile
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.exists
+import kotlin.io.path.inputStream
+import kotlin.io.path.outputStream
+
+/**
+ * supertypes and declared members of every class in a jar, read once per jar.
+ *
+ * the index is persisted next to the jar as `<jar>.hierarchy`, and reused for as long as the jar's digest, from
+ * [FileStampIndex], stays the same. only the most recently used indexes are kept in memory.
+ */
+class ClassHierarchyIndex private constructor(
+    /** in jar order */
+    val classes: Map<String, ClassInfo>
+) {
+
+    class ClassInfo(
+        val name: String,
+        val superName: String?,
+        val interfaces: List<String>,
+        val methods: List<MemberInfo>,
+        val fields: List<MemberInfo>,
+    ) {
+        private val inheritable by lazy {
+            methods.filter { it.access and Opcodes.ACC_PRIVATE == 0 }.mapTo(HashSet()) { it.name + it.desc }
+        }
+
+        /**
+         * whether this class declares a non-private method that a subclass would inherit or override.
+         */
+        fun declaresInheritable(name: String, desc: String) = (name + desc) in inheritable
+    }
+
+    class MemberInfo(val name: String, val desc: String, val access: Int)
+
+    companion object {
+        private const val MAGIC = 0x55434849 // UCHI
+        private const val VERSION = 2
+        private const val MAX_LOADED = 8
+
+        /** by jar digest, least recently used first */
+        private val loaded = object : LinkedHashMap<String, ClassHierarchyIndex>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ClassHierarchyIndex>?): Boolean {
+                return size > MAX_LOADED
+            }
+        }
+
+        fun indexFile(jar: Path): Path = jar.resolveSibling("${jar.fileName}.hierarchy")
+
+        /**
+         * get the index for [jar], from memory or next to the jar if possible, building it otherwise.
+         */
+        fun of(jar: Path): ClassHierarchyIndex {
+            val absolute = jar.toAbsolutePath().normalize()
+            val sha1 = FileStampIndex.sha1(absolute)
+            synchronized(loaded) {
+                loaded[sha1]?.let { return it }
+            }
+            val indexFile = indexFile(absolute)
+            val index = (if (indexFile.exists()) {
+                try {
+                    read(indexFile, sha1)
+                } catch (e: IOException) {
+                    null
+                }
+            } else null) ?: build(absolute).also {
+                try {
+                    it.write(indexFile, sha1)
+                } catch (e: IOException) {
+                    // jar's directory may not be writable, keep it in memory only
+                }
+            }
+            synchronized(loaded) {
+                loaded[sha1] = index
+            }
+            return index
+        }
+
+        fun build(jar: Path): ClassHierarchyIndex {
+            val classes = LinkedHashMap<String, ClassInfo>()
+            ZipFile(jar.toFile()).use { zip ->
+                val entries = zip.entries().asSequence().filter { !it.isDirectory && it.name.endsWith(".class") }.toList()
+                // parse in parallel, but keep jar order
+                val infos = arrayOfNulls<ClassInfo>(entries.size)
+                IntStream.range(0, entries.size).parallel().forEach { i ->
+                    infos[i] = zip.getInputStream(entries[i]).use { readClass(ClassReader(it)) }
+                }
+                for (info in infos) {
+                    classes[info!!.name] = info
+                }
+            }
+            return ClassHierarchyIndex(classes)
+        }
+
+        private fun readClass(reader: ClassReader): ClassInfo {
+            val methods = mutableListOf<MemberInfo>()
+            val fields = mutableListOf<MemberInfo>()
+            reader.accept(object : ClassVisitor(Opcodes.ASM9) {
+                override fun visitMethod(access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
+                    methods.add(MemberInfo(name, descriptor, access))
+                    return null
+                }
+
+                override fun visitField(access: Int, name: String, descriptor: String, signature: String?, value: Any?): FieldVisitor? {
+                    fields.add(MemberInfo(name, descriptor, access))
+                    return null
+                }
+            }, ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+            return ClassInfo(reader.className, reader.superName, reader.interfaces.toList(), methods, fields)
+        }
+
+        private fun read(indexFile: Path, sha1: String): ClassHierarchyIndex? {
+            DataInputStream(indexFile.inputStream().buffered()).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) return null
+                if (input.readUTF() != sha1) return null
+                fun readMembers() = List(input.readInt()) { MemberInfo(input.readUTF(), input.readUTF(), input.readInt()) }
+                val classes = LinkedHashMap<String, ClassInfo>()
+                repeat(input.readInt()) {
+                    val name = input.readUTF()
+                    val superName = input.readUTF().ifEmpty { null }
+                    val interfaces = List(input.readInt()) { input.readUTF() }
+                    classes[name] = ClassInfo(name, superName, interfaces, readMembers(), readMembers())
+                }
+                return ClassHierarchyIndex(classes)
+            }
+        }
+    }
+
+    private val ancestorCache = ConcurrentHashMap<String, List<ClassInfo>>()
+
+    operator fun get(name: String): ClassInfo? = classes[name]
+
+    /**
+     * every supertype of [name] in the jar, superclasses before interfaces, not including [name] itself.
+     */
+    fun ancestors(name: String): List<ClassInfo> {
+        ancestorCache[name]?.let { return it }
+        val info = classes[name] ?: return emptyList()
+        val result = LinkedHashMap<String, ClassInfo>()
+        info.superName?.let { superName ->
+            classes[superName]?.let { result[superName] = it }
+            for (ancestor in ancestors(superName)) result.putIfAbsent(ancestor.name, ancestor)
+        }
+        for (itf in info.interfaces) {
+            classes[itf]?.let { result.putIfAbsent(itf, it) }
+            for (ancestor in ancestors(itf)) result.putIfAbsent(ancestor.name, ancestor)
+        }
+        return result.values.toList().also { ancestorCache[name] = it }
+    }
+
+    /**
+     * whether a supertype of [owner] declares a non-private method with the same name and descriptor.
+     */
+    fun isInherited(owner: String, name: String, desc: String): Boolean {
+        return ancestors(owner).any { it.declaresInheritable(name, desc) }
+    }
+
+    private fun write(indexFile: Path, sha1: String) {
+        val temp = Files.createTempFile(indexFile.parent, indexFile.fileName.toString(), ".tmp")
+        try {
+            DataOutputStream(temp.outputStream().buffered()).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeUTF(sha1)
+                fun writeMembers(members: List<MemberInfo>) {
+                    output.writeInt(members.size)
+                    for (member in members) {
+                        output.writeUTF(member.name)
+                        output.writeUTF(member.desc)
+                        output.writeInt(member.access)
+                    }
+                }
+                output.writeInt(classes.size)
+                for (info in classes.values) {
+                    output.writeUTF(info.name)
+                    output.writeUTF(info.superName ?: "")
+                    output.writeInt(info.interfaces.size)
+                    for (itf in info.interfaces) output.writeUTF(itf)
+                    writeMembers(info.methods)
+                    writeMembers(info.fields)
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+}
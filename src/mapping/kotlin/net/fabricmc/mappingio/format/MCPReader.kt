@@ -19,6 +19,46 @@ internal fun ColumnFileReader.readCell(): String? {
     return source
 }
 
+/**
+ * visit every class of [seargeMappings] straight into [visitor], with [visitMembers] joining the csv names onto
+ * its members. the searge tree is walked again for every pass the visitor asks for.
+ *
+ * [visitor] may write into [seargeMappings] itself, so classes, and members in [visitMembers], are iterated over
+ * snapshots.
+ */
+internal inline fun visitSeargeJoin(
+    seargeMappings: MappingTreeView,
+    sourceNamespace: String,
+    targetNamespace: String,
+    visitor: MappingVisitor,
+    classDstName: Boolean,
+    visitMembers: (MappingTreeView.ClassMappingView, Int) -> Unit
+) {
+    val seargeNamespace = seargeMappings.getNamespaceId(sourceNamespace)
+    if (seargeNamespace == MappingTreeView.NULL_NAMESPACE_ID) {
+        throw IllegalStateException("Namespace $sourceNamespace not found")
+    }
+
+    do {
+        if (visitor.visitHeader()) {
+            visitor.visitNamespaces(sourceNamespace, listOf(targetNamespace))
+        }
+
+        if (visitor.visitContent()) {
+            for (clazz in seargeMappings.classes.toList()) {
+                val cn = clazz.getName(seargeNamespace) ?: continue
+                if (!visitor.visitClass(cn)) continue
+                if (classDstName) {
+                    visitor.visitDstName(MappedElementKind.CLASS, 0, cn)
+                }
+                if (visitor.visitElementContent(MappedElementKind.CLASS)) {
+                    visitMembers(clazz, seargeNamespace)
+                }
+            }
+        }
+    } while (!visitor.visitEnd())
+}
+
 @Suppress("UNUSED")
 object MCPReader {
 
@@ -68,62 +108,16 @@ object MCPReader {
             methods[src] = data
         }
 
-        val parentVisitor = visitor
-
-        @Suppress("NAME_SHADOWING")
-        val visitor = MemoryMappingTree()
-
-        val visitHeader = visitor.visitHeader()
-
-        if (visitHeader) {
-            visitor.visitNamespaces(sourceNamespace, listOf(targetNamespace))
-        }
-
-        val seargeNamespace = seargeMappings.getNamespaceId(sourceNamespace)
-        if (seargeNamespace == MappingTreeView.NULL_NAMESPACE_ID) {
-            throw IllegalStateException("Namespace $sourceNamespace not found")
-        }
-
-
-        if (visitor.visitContent()) {
-            var visitLastClass: Boolean
-
-            for (clazz in seargeMappings.classes) {
-                val cn = clazz.getName(seargeNamespace) ?: continue
-                visitLastClass = visitor.visitClass(cn)
-
-                if (visitLastClass) {
-                    visitor.visitDstName(MappedElementKind.CLASS, 0, cn)
-                    visitor.visitElementContent(MappedElementKind.CLASS)
-                }
-            }
-
-            for (clazz in seargeMappings.classes) {
-                visitLastClass = visitor.visitClass(clazz.getName(seargeNamespace) ?: continue)
-                if (visitLastClass) {
-                    visitLastClass = visitor.visitElementContent(MappedElementKind.CLASS)
-
-                    if (visitLastClass) {
-                        for (meth in clazz.methods) {
-                            if (meth.getName(seargeNamespace) in methods) {
-                                val method = methods[meth.getName(seargeNamespace)]!!
-                                visitor.visitMethod(method.source, meth.getDesc(seargeNamespace))
-//                                System.out.println("Owner ${clazz.getName(seargeNamespace)} Method: ${method.source} -> ${method.target}")
-                                visitor.visitDstName(MappedElementKind.METHOD, 0, method.target)
-                                visitor.visitElementContent(MappedElementKind.METHOD)
-                                if (method.desc != null) {
-                                    visitor.visitComment(MappedElementKind.METHOD, method.desc)
-                                }
-                            }
-                        }
-                    }
+        visitSeargeJoin(seargeMappings, sourceNamespace, targetNamespace, visitor, true) { clazz, seargeNamespace ->
+            for (meth in clazz.methods.toList()) {
+                val method = methods[meth.getName(seargeNamespace) ?: continue] ?: continue
+                if (!visitor.visitMethod(method.source, meth.getDesc(seargeNamespace))) continue
+                visitor.visitDstName(MappedElementKind.METHOD, 0, method.target)
+                if (visitor.visitElementContent(MappedElementKind.METHOD) && method.desc != null) {
+                    visitor.visitComment(MappedElementKind.METHOD, method.desc)
                 }
             }
         }
-
-        visitor.visitEnd()
-
-        visitor.accept(parentVisitor)
     }
 
     fun readField(envType: EnvType, reader: Reader,
@@ -168,64 +162,16 @@ object MCPReader {
             fields[src] = data
         }
 
-        val parentVisitor = visitor
-
-        @Suppress("NAME_SHADOWING")
-        val visitor = MemoryMappingTree()
-
-        val visitHeader = visitor.visitHeader()
-
-        if (visitHeader) {
-            visitor.visitNamespaces(sourceNamespace, listOf(targetNamespace))
-        }
-
-        val seargeNamespace = mappingTree.getNamespaceId(sourceNamespace)
-        if (seargeNamespace == MappingTreeView.NULL_NAMESPACE_ID) {
-            throw IllegalStateException("Namespace $sourceNamespace not found")
-        }
-
-        var visitLastClass: Boolean
-
-
-        if (visitor.visitContent()) {
-            for (clazz in mappingTree.classes) {
-                val cn = clazz.getName(seargeNamespace) ?: continue
-                visitLastClass = visitor.visitClass(cn)
-
-                if (visitLastClass) {
-                    visitor.visitDstName(MappedElementKind.CLASS, 0, cn)
-                    visitor.visitElementContent(MappedElementKind.CLASS)
-                }
-            }
-
-            for (clazz in mappingTree.classes) {
-                visitLastClass = visitor.visitClass(clazz.getName(seargeNamespace) ?: continue)
-                if (visitLastClass) {
-                    visitLastClass = visitor.visitElementContent(MappedElementKind.CLASS)
-
-                    if (visitLastClass) {
-                        for (fd in clazz.fields) {
-                            if (fd.getName(seargeNamespace) in fields) {
-                                val field = fields[fd.getName(seargeNamespace)]!!
-                                visitor.visitField(field.source, fd.getDesc(seargeNamespace))
-//                                System.out.println("Owner ${clazz.getName(seargeNamespace)} Field: ${field.source} -> ${field.target}")
-                                visitor.visitDstName(MappedElementKind.FIELD, 0, field.target)
-                                visitor.visitElementContent(MappedElementKind.FIELD)
-                                if (field.desc != null) {
-                                    visitor.visitComment(MappedElementKind.FIELD, field.desc)
-                                }
-                            } else {
-//                                System.out.println("Owner ${clazz.getName(seargeNamespace)} Field: ${fd.getName(seargeNamespace)} -> DNE")
-                            }
-                        }
-                    }
+        visitSeargeJoin(mappingTree, sourceNamespace, targetNamespace, visitor, true) { clazz, seargeNamespace ->
+            for (fd in clazz.fields.toList()) {
+                val field = fields[fd.getName(seargeNamespace) ?: continue] ?: continue
+                if (!visitor.visitField(field.source, fd.getDesc(seargeNamespace))) continue
+                visitor.visitDstName(MappedElementKind.FIELD, 0, field.target)
+                if (visitor.visitElementContent(MappedElementKind.FIELD) && field.desc != null) {
+                    visitor.visitComment(MappedElementKind.FIELD, field.desc)
                 }
             }
         }
-
-        visitor.visitEnd()
-
-        visitor.accept(parentVisitor)
     }
 
     fun readParam(envType: EnvType, reader: Reader,
@@ -267,50 +213,19 @@ object MCPReader {
             params[src[1]] = data
         }
 
-        val parentVisitor = visitor
-        @Suppress("NAME_SHADOWING") val visitor = MemoryMappingTree()
-
-        val visitHeader = visitor.visitHeader()
-
-        if (visitHeader) {
-            visitor.visitNamespaces(sourceNamespace, listOf(targetNamespace))
-        }
-
-        val seargeNamespace = mappingTree.getNamespaceId(sourceNamespace)
-        if (seargeNamespace == MappingTreeView.NULL_NAMESPACE_ID) {
-            throw IllegalStateException("Namespace $sourceNamespace not found")
-        }
-
-        var visitLastClass: Boolean
-
-        if (visitor.visitContent()) {
-            for (clazz in mappingTree.classes) {
-                visitLastClass = visitor.visitClass(clazz.getName(seargeNamespace) ?: continue)
-                if (visitLastClass) {
-                    visitLastClass = visitor.visitElementContent(MappedElementKind.CLASS)
-
-                    if (visitLastClass) {
-                        for (meth in clazz.methods) {
-                            val srg = meth.getName(seargeNamespace)?.split("_") ?: continue
-                            if (srg.size < 2) continue
-                            val srgId = srg[1]
-                            if (srgId in params) {
-                                val param = params[srgId]!!
-                                visitor.visitMethod(meth.getName(seargeNamespace), meth.getDesc(seargeNamespace))
-                                visitor.visitElementContent(MappedElementKind.METHOD)
-                                if (visitor.visitMethodArg(-1, Integer.parseInt(param.source), null)) {
-                                    visitor.visitDstName(MappedElementKind.METHOD_ARG, 0, param.target)
-                                }
-                            }
-                        }
-                    }
+        visitSeargeJoin(mappingTree, sourceNamespace, targetNamespace, visitor, false) { clazz, seargeNamespace ->
+            for (meth in clazz.methods.toList()) {
+                val srg = meth.getName(seargeNamespace)?.split("_") ?: continue
+                if (srg.size < 2) continue
+                val param = params[srg[1]] ?: continue
+                if (!visitor.visitMethod(meth.getName(seargeNamespace), meth.getDesc(seargeNamespace))) continue
+                if (!visitor.visitElementContent(MappedElementKind.METHOD)) continue
+                if (visitor.visitMethodArg(-1, Integer.parseInt(param.source), null)) {
+                    visitor.visitDstName(MappedElementKind.METHOD_ARG, 0, param.target)
+                    visitor.visitElementContent(MappedElementKind.METHOD_ARG)
                 }
             }
         }
-
-        visitor.visitEnd()
-
-        visitor.accept(parentVisitor)
     }
 
     fun readPackages(envType: EnvType, reader: Reader): (MappingVisitor) -> PackageRemappingVisitor {
@@ -343,8 +258,9 @@ object MCPReader {
             packages += "net/minecraft/**/$className" to packageName
         }
 
+        val matcher = PackageMatcher(packages)
         return {
-            PackageRemappingVisitor(it, targetNamespaces, packages)
+            PackageRemappingVisitor(it, targetNamespaces, matcher)
         }
     }
 
@@ -9,11 +9,17 @@ import net.fabricmc.mappingio.tree.MemoryMappingTree
 import xyz.wagyourtail.unimined.api.minecraft.EnvType
 import xyz.wagyourtail.unimined.util.*
 import java.io.BufferedReader
-import java.io.File
 import java.io.IOException
 import java.io.InputStream
+import java.io.Reader
+import java.io.StringReader
+import java.nio.file.Files
 import java.nio.file.Path
-import kotlin.io.path.inputStream
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import kotlin.io.path.bufferedReader
+import kotlin.io.path.bufferedWriter
+import kotlin.io.path.deleteIfExists
 import kotlin.io.path.name
 
 class MappingTreeBuilder {
@@ -26,7 +32,13 @@ class MappingTreeBuilder {
 
     private val onBuild = mutableListOf<OnBuildTask>()
 
-    data class OnBuildTask(val name: String, val dep: Set<String>, val out: Set<String>, val action: () -> Unit) {
+    data class OnBuildTask(
+        val name: String,
+        val dep: Set<String>,
+        val out: Set<String>,
+        val prepare: (() -> Unit)? = null,
+        val action: () -> Unit
+    ) {
         override fun toString(): String {
             return "OnBuildTask(name=$name, dep=$dep, out=$out)"
         }
@@ -55,27 +67,39 @@ class MappingTreeBuilder {
     }
 
     fun MappingInputBuilder.MappingInput.wrapInput(name: String, reader: BufferedReader?, action: (BufferedReader?) -> Unit) {
-        val tempFile = if (reader != null) {
-            // cache the reader
-            File.createTempFile("mapping-input", ".tmp").apply {
-                deleteOnExit()
-                // write reader to file
-                bufferedWriter().use { out ->
-                    reader.use { it.copyTo(out) }
+        wrapInput(name, reader?.use { MappingContent.spool(it) }, null) { r, _ -> action(r) }
+    }
+
+    /**
+     * @param standalone reader for formats that don't read from [tree], if present the input is parsed into its own tree
+     *  concurrently with the other inputs during [build], and [action] receives that tree instead of having to parse it.
+     */
+    fun MappingInputBuilder.MappingInput.wrapInput(
+        name: String,
+        content: MappingContent?,
+        standalone: ((BufferedReader, MappingVisitor) -> Unit)?,
+        action: (BufferedReader?, MappingTreeView?) -> Unit
+    ) {
+        var parsed: MappingTreeView? = null
+        val prepare = if (standalone != null && content != null) {
+            {
+                parsed = content.reader().use {
+                    MemoryMappingTree().also { tree -> standalone(it, tree) }
                 }
             }
         } else null
-        val task = OnBuildTask(name, (dependsOn + setOf(nsSource) - sourceNs).toSet(), nsFilter) {
-            if (tempFile != null) {
-                tempFile.bufferedReader().use {
+        val task = OnBuildTask(name, (dependsOn + setOf(nsSource) - sourceNs).toSet(), nsFilter, prepare) {
+            if (content != null) {
+                content.reader().use {
                     try {
-                        action(it)
+                        action(it, parsed)
                     } finally {
-                        tempFile.delete()
+                        parsed = null
+                        content.release()
                     }
                 }
             } else {
-                action(null)
+                action(null, null)
             }
         }
         // determine where to put in after list based on being in the output of a previous
@@ -102,6 +126,19 @@ class MappingTreeBuilder {
         oldTree.accept(newVisitor(tree as MappingVisitor))
     }
 
+    /**
+     * apply a package remapping to the tree built so far, and to every input processed after it.
+     * the existing tree is renamed in place where possible, instead of being rebuilt.
+     */
+    fun addPackageRemapping(remapper: (MappingVisitor) -> PackageRemappingVisitor) {
+        if (remapper(tree).remapInPlace(tree)) {
+            val oldFMV = globalFMV
+            globalFMV = { remapper(oldFMV(it)) }
+        } else {
+            reprocessWithAddedGlobalFMV(remapper)
+        }
+    }
+
     fun bytecodeJar(file: Path, inputs: MappingInputBuilder) {
         checkFrozen()
         val input = inputs.build("", BetterMappingFormat.OBF_JAR)
@@ -125,29 +162,32 @@ class MappingTreeBuilder {
     fun mappingFile(file: Path, input: MappingInputBuilder) {
         checkFrozen()
         if (file.isZip()) {
-            val found = mutableSetOf<Pair<BetterMappingFormat, String>>()
+            // detect and buffer every entry in a single pass over the archive
+            val found = mutableListOf<Triple<BetterMappingFormat, String, MappingContent>>()
             file.forEachInZip { name, stream ->
-                try {
-                    val reader = stream.bufferedReader()
-                    if (listOf(
-                            name.endsWith(".tsrg"),
-                            name.endsWith(".rgs"),
-                            name.endsWith(".srg"),
-                            name.endsWith(".csrg"),
-                            name.endsWith(".tiny"),
-                            name.endsWith(".csv"),
-                            name.endsWith(".mapping"),
-                            name.endsWith(".json")
-                        ).any { it }
-                    ) {
-                        val header = detectHeader(reader, name)
-                        if (header != null) {
-                            found.add(header to name)
-                        }
-                    }
+                if (listOf(
+                        name.endsWith(".tsrg"),
+                        name.endsWith(".rgs"),
+                        name.endsWith(".srg"),
+                        name.endsWith(".csrg"),
+                        name.endsWith(".tiny"),
+                        name.endsWith(".csv"),
+                        name.endsWith(".mapping"),
+                        name.endsWith(".json")
+                    ).none { it }
+                ) {
+                    return@forEachInZip
+                }
+                val reader = stream.bufferedReader()
+                val header = try {
+                    detectHeader(reader, name)
                 } catch (e: Exception) {
                     throw IOException("Error reading header on $name", e)
                 }
+                if (header != null) {
+                    // detectHeader resets the reader, so the whole entry is still available
+                    found.add(Triple(header, name, MappingContent.spool(reader)))
+                }
             }
             found.sortedWith { a, b ->
                 if (a.first == b.first) {
@@ -155,53 +195,53 @@ class MappingTreeBuilder {
                 } else {
                     a.first.ordinal.compareTo(b.first.ordinal)
                 }
-            }.forEach {
+            }.forEach { (type, name, content) ->
                 try {
-                    if (it.first == BetterMappingFormat.RETROGUARD) {
+                    if (type == BetterMappingFormat.RETROGUARD) {
                         if (side == EnvType.COMBINED) throw IllegalArgumentException("Cannot use retroguard mappings in combined mode")
-                        if (it.second.endsWith("_server.rgs") && side.mcp == 0) {
+                        if (name.endsWith("_server.rgs") && side.mcp == 0) {
+                            content.release()
                             return@forEach
-                        } else if (!it.second.endsWith("_server.rgs") && side.mcp == 1) {
+                        } else if (!name.endsWith("_server.rgs") && side.mcp == 1) {
+                            content.release()
                             return@forEach
                         }
                     }
-                    if (it.first == BetterMappingFormat.SRG) {
-                        val combined = it.second.endsWith("joined.srg")
+                    if (type == BetterMappingFormat.SRG) {
+                        val combined = name.endsWith("joined.srg")
                         if (side == EnvType.COMBINED && !combined) {
                             throw IllegalArgumentException("Cannot use srg mappings in combined mode as joined.srg is required")
                         }
                         if (!combined) {
-                            if (side == EnvType.CLIENT && !it.second.endsWith("client.srg")) {
-//                                println("Skipping ${it.second}")
+                            if (side == EnvType.CLIENT && !name.endsWith("client.srg")) {
+//                                println("Skipping ${name}")
+                                content.release()
                                 return@forEach
                             }
-                            if (side == EnvType.SERVER && !it.second.endsWith("server.srg")) {
-//                                println("Skipping ${it.second}")
+                            if (side == EnvType.SERVER && !name.endsWith("server.srg")) {
+//                                println("Skipping ${name}")
+                                content.release()
                                 return@forEach
                             }
                         }
                     }
-                    file.readZipInputStreamFor(it.second) { stream ->
-                        mappingReaderIntl(it.second, stream.bufferedReader(), input, it.first)
-                    }
+                    mappingReaderIntl(name, content, input, type)
                 } catch (e: Exception) {
-                    throw IOException("Error reading ${file.name}!/${it.second}", e)
+                    throw IOException("Error reading ${file.name}!/${name}", e)
                 }
             }
         } else {
-            file.inputStream().use {
-                try {
-                    mappingReaderIntl(file.name, it.bufferedReader(), input)
-                } catch (e: Exception) {
-                    throw IOException("Error reading ${file.name}", e)
-                }
+            try {
+                mappingReaderIntl(file.name, MappingContent.of(file), input)
+            } catch (e: Exception) {
+                throw IOException("Error reading ${file.name}", e)
             }
         }
     }
 
     fun mappingStream(name: String, stream: InputStream, input: MappingInputBuilder) {
         checkFrozen()
-        mappingReaderIntl(name, stream.bufferedReader(), input)
+        mappingReaderIntl(name, stream.bufferedReader().use { MappingContent.spool(it) }, input)
     }
 
     private fun detectHeader(reader: BufferedReader, fName: String): BetterMappingFormat? {
@@ -260,15 +300,17 @@ class MappingTreeBuilder {
 
     private fun mappingReaderIntl(
         fname: String,
-        reader: BufferedReader,
+        content: MappingContent,
         inputs: MappingInputBuilder,
-        type: BetterMappingFormat = detectHeader(reader, fname)
+        type: BetterMappingFormat = content.reader().use { detectHeader(it, fname) }
             ?: throw IllegalArgumentException("cannot detect mapping format")
     ) {
         val input = inputs.build(fname, type)
-        if (input.exclude) return
-        @Suppress("NAME_SHADOWING")
-        input.wrapInput(fname, reader) { reader ->
+        if (input.exclude) {
+            content.release()
+            return
+        }
+        input.wrapInput(fname, content, standaloneReader(fname, type)) { reader, parsed ->
             reader!!
             println("processing $fname")
             val visitor = MappingNsRenamer(
@@ -282,7 +324,7 @@ class MappingTreeBuilder {
                 ), input.nsMap
             )
             val preDstNs = tree.dstNamespaces ?: emptyList()
-            when (type) {
+            if (parsed != null) parsed.accept(visitor) else when (type) {
                 BetterMappingFormat.TINY -> Tiny1Reader.read(reader, visitor)
                 BetterMappingFormat.TINY_2 -> Tiny2Reader.read(reader, visitor)
                 BetterMappingFormat.MCP -> {
@@ -306,7 +348,7 @@ class MappingTreeBuilder {
                         }
 
                         "packages.csv" -> {
-                            reprocessWithAddedGlobalFMV(MCPReader.readPackages(
+                            addPackageRemapping(MCPReader.readPackages(
                                 side, reader, setOf("searge", input.nsMap["mcp"] ?: "mcp")
                             ))
                         }
@@ -372,7 +414,7 @@ class MappingTreeBuilder {
                             CSrgReader.readMembers(reader, "official", "spigot", visitor, tree)
                         }
                         "package.srg" -> {
-                            reprocessWithAddedGlobalFMV(CSrgReader.readPackages(
+                            addPackageRemapping(CSrgReader.readPackages(
                                 reader, setOf(input.nsMap["spigot"] ?: "spigot")
                             ))
                         }
@@ -390,14 +432,88 @@ class MappingTreeBuilder {
         }
     }
 
+    /**
+     * formats that only depend on their own file, and not on what's already in [tree].
+     */
+    private fun standaloneReader(fname: String, type: BetterMappingFormat): ((BufferedReader, MappingVisitor) -> Unit)? {
+        return when (type) {
+            BetterMappingFormat.TINY -> { r, v -> Tiny1Reader.read(r, v) }
+            BetterMappingFormat.TINY_2 -> { r, v -> Tiny2Reader.read(r, v) }
+            BetterMappingFormat.SRG -> { r, v -> SrgReader.read(r, "official", "searge", v) }
+            BetterMappingFormat.TSRG -> { r, v -> TsrgReader.read(r, "official", "searge", v) }
+            BetterMappingFormat.TSRG_2 -> { r, v -> TsrgReader.read(r, v) }
+            BetterMappingFormat.RETROGUARD -> { r, v -> RGSReader.read(r, "official", "searge", v) }
+            BetterMappingFormat.PROGUARD -> { r, v -> ProGuardReader.read(r, "mojmap", "official", v) }
+            BetterMappingFormat.PARCHMENT -> { r, v -> ParchmentReader.read(r, "mojmap", v) }
+            BetterMappingFormat.CSRG -> if (fname.split("/", "\\", "-").last() == "cl.csrg") {
+                { r, v -> CSrgReader.readClasses(r, "official", "spigot", v) }
+            } else null
+            else -> null
+        }
+    }
+
     fun build(): MappingTreeView {
         if (!frozen) frozen = true
-        for (action in onBuild) {
+        // parse the standalone inputs concurrently, they're still applied to the tree in order
+        val prepared = onBuild.map { task ->
+            task.prepare?.let { prepare -> CompletableFuture.runAsync { prepare() } }
+        }
+        for ((i, action) in onBuild.withIndex()) {
+            try {
+                prepared[i]?.join()
+            } catch (e: CompletionException) {
+                prepared.forEach { it?.cancel(false) }
+                throw e.cause ?: e
+            }
             action.action()
         }
         return tree
     }
 
+    /**
+     * the contents of a mapping input, held until [build].
+     * inputs are kept in memory, unless they're larger than [SPOOL_THRESHOLD] chars, in which case they're spooled to a temp file.
+     */
+    class MappingContent private constructor(private var text: String?, private val file: Path?, private val temp: Boolean) {
+
+        companion object {
+            const val SPOOL_THRESHOLD = 16 * 1024 * 1024
+
+            /**
+             * read directly from [path] when needed, without copying it.
+             */
+            fun of(path: Path) = MappingContent(null, path, false)
+
+            fun spool(reader: Reader): MappingContent {
+                val text = StringBuilder()
+                val buffer = CharArray(8192)
+                while (text.length < SPOOL_THRESHOLD) {
+                    val read = reader.read(buffer)
+                    if (read == -1) return MappingContent(text.toString(), null, false)
+                    text.append(buffer, 0, read)
+                }
+                // too large to keep around in memory
+                val tempFile = Files.createTempFile("mapping-input", ".tmp")
+                tempFile.toFile().deleteOnExit()
+                tempFile.bufferedWriter().use { out ->
+                    out.append(text)
+                    reader.copyTo(out)
+                }
+                return MappingContent(null, tempFile, true)
+            }
+        }
+
+        fun reader(): BufferedReader {
+            text?.let { return BufferedReader(StringReader(it)) }
+            return file?.bufferedReader() ?: throw IllegalStateException("mapping content already released")
+        }
+
+        fun release() {
+            text = null
+            if (temp) file?.deleteIfExists()
+        }
+    }
+
     class MappingInputBuilder {
         class MappingInput {
             val nsMap: MutableMap<String, String> = mutableMapOf()
@@ -50,65 +50,7 @@ object OldMCPReader {
         visitor: MappingVisitor,
         mappingTree: MappingTreeView
     ) {
-
-        reader.mark()
-        if (!checkHeader(reader)) {
-            reader.reset()
-            throw IllegalArgumentException("Invalid header")
-        }
-
-        val parentVisitor = visitor
-
-        @Suppress("NAME_SHADOWING") val visitor = MemoryMappingTree()
-
-        val visitHeader = visitor.visitHeader()
-
-        if (visitHeader) {
-            visitor.visitNamespaces(notchNamespace, listOf(seargeNamespace, targetNamespace))
-        }
-
-        if (visitor.visitContent()) {
-            var lastClass: String? = null
-            var visitLastClass = false
-
-            while (reader.nextLine(0)) {
-                val searge = reader.readCell()
-                val name = reader.readCell()
-                val notch = reader.readCell()
-                @Suppress("UNUSED_VARIABLE") val sig = reader.readCell()!!
-                var notchSig = reader.readCell()!!
-                val className = reader.readCell()
-                var classNotch = reader.readCell()
-                val packageName = reader.readCell()
-                val side = reader.readCell()!!
-                if (side != "2" && side.toInt() != envType.mcp) continue
-
-                if (className == classNotch) {
-                    classNotch = "$packageName/$classNotch"
-                }
-
-                notchSig = fixNotchSig(notchSig, sig, mappingTree)
-
-                if (lastClass != classNotch) {
-                    lastClass = classNotch
-                    visitLastClass = visitor.visitClass(classNotch)
-
-                    if (visitLastClass) {
-                        visitLastClass = visitor.visitElementContent(MappedElementKind.CLASS)
-                    }
-                }
-                if (visitLastClass) {
-                    visitor.visitMethod(notch, notchSig)
-                    visitor.visitDstName(MappedElementKind.METHOD, 0, searge)
-                    visitor.visitDstName(MappedElementKind.METHOD, 1, name)
-                    visitor.visitElementContent(MappedElementKind.METHOD)
-                }
-            }
-        }
-
-        visitor.visitEnd()
-
-        visitor.accept(parentVisitor)
+        readMembers(envType, reader, notchNamespace, seargeNamespace, targetNamespace, visitor, mappingTree, MappedElementKind.METHOD)
     }
 
     fun readField(envType: EnvType, reader: Reader, visitor: MappingVisitor, mappingTree: MappingTreeView) {
@@ -136,6 +78,22 @@ object OldMCPReader {
         visitor: MappingVisitor,
         mappingTree: MappingTreeView
     ) {
+        readMembers(envType, reader, notchNamespace, seargeNamespace, targetNamespace, visitor, mappingTree, MappedElementKind.FIELD)
+    }
+
+    /**
+     * group the csv rows by owner class, then visit them straight into [visitor].
+     */
+    private fun readMembers(
+        envType: EnvType,
+        reader: ColumnFileReader,
+        notchNamespace: String,
+        seargeNamespace: String,
+        targetNamespace: String,
+        visitor: MappingVisitor,
+        mappingTree: MappingTreeView,
+        kind: MappedElementKind
+    ) {
 
         reader.mark()
         if (!checkHeader(reader)) {
@@ -143,63 +101,66 @@ object OldMCPReader {
             throw IllegalArgumentException("Invalid header")
         }
 
-        val parentVisitor = visitor
-
-        @Suppress("NAME_SHADOWING") val visitor = MemoryMappingTree()
+        val classesBySimpleName = lazy { simpleNameIndex(mappingTree) }
+        val members = LinkedHashMap<String, LinkedHashMap<Pair<String, String>, MemberData>>()
+
+        while (reader.nextLine(0)) {
+            val searge = reader.readCell()
+            val name = reader.readCell()
+            val notch = reader.readCell()
+            @Suppress("UNUSED_VARIABLE") val sig = reader.readCell()!!
+            var notchSig = reader.readCell()!!
+            val className = reader.readCell()
+            var classNotch = reader.readCell()
+            val packageName = reader.readCell()
+            val side = reader.readCell()!!
+            if (side != "2" && side.toInt() != envType.mcp) continue
+
+            if (className == classNotch) {
+                classNotch = "$packageName/$classNotch"
+            }
 
-        val visitHeader = visitor.visitHeader()
+            notchSig = fixNotchSig(notchSig, sig, classesBySimpleName)
 
-        if (visitHeader) {
-            visitor.visitNamespaces(notchNamespace, listOf(seargeNamespace, targetNamespace))
+            members.getOrPut(classNotch!!) { LinkedHashMap() }[notch!! to notchSig] = MemberData(searge, name)
         }
 
-        if (visitor.visitContent()) {
-            var lastClass: String? = null
-            var visitLastClass = false
-
-            while (reader.nextLine(0)) {
-                val searge = reader.readCell()
-                val name = reader.readCell()
-                val notch = reader.readCell()
-                @Suppress("UNUSED_VARIABLE") val sig = reader.readCell()!!
-                var notchSig = reader.readCell()!!
-                val className = reader.readCell()
-                var classNotch = reader.readCell()
-                val packageName = reader.readCell()
-                val side = reader.readCell()!!
-                if (side != "2" && side.toInt() != envType.mcp) continue
-
-                if (className == classNotch) {
-                    classNotch = "$packageName/$classNotch"
-                }
-
-                notchSig = fixNotchSig(notchSig, sig, mappingTree)
+        do {
+            if (visitor.visitHeader()) {
+                visitor.visitNamespaces(notchNamespace, listOf(seargeNamespace, targetNamespace))
+            }
 
-                if (lastClass != classNotch) {
-                    lastClass = classNotch
-                    visitLastClass = visitor.visitClass(classNotch)
+            if (visitor.visitContent()) {
+                for ((classNotch, classMembers) in members) {
+                    if (!visitor.visitClass(classNotch) || !visitor.visitElementContent(MappedElementKind.CLASS)) continue
 
-                    if (visitLastClass) {
-                        visitLastClass = visitor.visitElementContent(MappedElementKind.CLASS)
+                    for ((member, data) in classMembers) {
+                        val visit = if (kind == MappedElementKind.METHOD) {
+                            visitor.visitMethod(member.first, member.second)
+                        } else {
+                            visitor.visitField(member.first, member.second)
+                        }
+                        if (!visit) continue
+                        data.searge?.let { visitor.visitDstName(kind, 0, it) }
+                        data.name?.let { visitor.visitDstName(kind, 1, it) }
+                        visitor.visitElementContent(kind)
                     }
                 }
-                if (visitLastClass) {
-                    visitor.visitField(notch, notchSig)
-                    visitor.visitDstName(MappedElementKind.FIELD, 0, searge)
-                    visitor.visitDstName(MappedElementKind.FIELD, 1, name)
-                    visitor.visitElementContent(MappedElementKind.FIELD)
-                }
             }
-        }
-
-        visitor.visitEnd()
+        } while (!visitor.visitEnd())
+    }
 
-        visitor.accept(parentVisitor)
+    private fun simpleNameIndex(mappingTree: MappingTreeView): Map<String, String> {
+        val index = mutableMapOf<String, String>()
+        for (clazz in mappingTree.classes) {
+            index.putIfAbsent(clazz.srcName.substringAfterLast('/'), clazz.srcName)
+        }
+        return index
     }
 
     private val classSigRegex = Regex("L([^;]+);")
 
-    private fun fixNotchSig(notchSig: String, sig: String, mappingTree: MappingTreeView): String {
+    private fun fixNotchSig(notchSig: String, sig: String, classesBySimpleName: Lazy<Map<String, String>>): String {
         @Suppress("NAME_SHADOWING") var notchSig = notchSig
         val notchSigSpl = classSigRegex.findAll(notchSig).map { it.groupValues[1] }.toList()
         val sigSpl = classSigRegex.findAll(sig).map { it.groupValues[1] }.toList()
@@ -207,15 +168,10 @@ object OldMCPReader {
             for (i in notchSigSpl.indices) {
                 if (notchSigSpl[i] == sigSpl[i]) {
                     // find in class map
-                    var found = false
-                    for (clazz in mappingTree.classes) {
-                        if (clazz.srcName.split("/").last() == notchSigSpl[i]) {
-                            notchSig = notchSig.replace(notchSigSpl[i], clazz.srcName)
-                            found = true
-                            break
-                        }
-                    }
-                    if (!found) {
+                    val found = classesBySimpleName.value[notchSigSpl[i]]
+                    if (found != null) {
+                        notchSig = notchSig.replace(notchSigSpl[i], found)
+                    } else {
 //                        System.err.println("Class not found: ${notchSigSpl[i]}")
                     }
                 }
@@ -278,43 +234,38 @@ object OldMCPReader {
             throw IllegalArgumentException("Invalid header")
         }
 
-        val parentVisitor = visitor
-
-        @Suppress("NAME_SHADOWING") val visitor = MemoryMappingTree()
-
-        val visitHeader = visitor.visitHeader()
-
-        if (visitHeader) {
-            visitor.visitNamespaces(notchNamespace, listOf(seargeNamespace, targetNamespace))
+        val classes = LinkedHashMap<String, String>()
+        while (reader.nextLine(0)) {
+            val name = reader.readCell()
+            val notch = reader.readCell()
+            reader.readCell() // superName
+            val packageName = reader.readCell()
+            val side = reader.readCell()!!
+            if (side != "2" && side.toInt() != envType.mcp) continue
+
+            val src = if (name == notch) "$packageName/$notch" else notch!!
+            classes[src] = "$packageName/$name"
         }
 
-        var visitLastClass: Boolean
-
-        if (visitor.visitContent()) {
-            while (reader.nextLine(0)) {
-                val name = reader.readCell()
-                val notch = reader.readCell()
-                reader.readCell() // superName
-                val packageName = reader.readCell()
-                val side = reader.readCell()!!
-                if (side != "2" && side.toInt() != envType.mcp) continue
-
-                if (name == notch) {
-                    visitLastClass = visitor.visitClass("$packageName/$notch")
-                } else {
-                    visitLastClass = visitor.visitClass(notch)
-                }
+        do {
+            if (visitor.visitHeader()) {
+                visitor.visitNamespaces(notchNamespace, listOf(seargeNamespace, targetNamespace))
+            }
 
-                if (visitLastClass) {
-                    visitor.visitDstName(MappedElementKind.CLASS, 0, "$packageName/$name")
-                    visitor.visitDstName(MappedElementKind.CLASS, 1, "$packageName/$name")
-                    visitor.visitElementContent(MappedElementKind.CLASS)
+            if (visitor.visitContent()) {
+                for ((notch, name) in classes) {
+                    if (visitor.visitClass(notch)) {
+                        visitor.visitDstName(MappedElementKind.CLASS, 0, name)
+                        visitor.visitDstName(MappedElementKind.CLASS, 1, name)
+                        visitor.visitElementContent(MappedElementKind.CLASS)
+                    }
                 }
             }
-        }
-
-        visitor.visitEnd()
-
-        visitor.accept(parentVisitor)
+        } while (!visitor.visitEnd())
     }
-}
\ No newline at end of file
+
+    private data class MemberData(
+        val searge: String?,
+        val name: String?
+    )
+}
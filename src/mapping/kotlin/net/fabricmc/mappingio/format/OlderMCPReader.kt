@@ -3,7 +3,6 @@ package net.fabricmc.mappingio.format
 import net.fabricmc.mappingio.MappedElementKind
 import net.fabricmc.mappingio.MappingVisitor
 import net.fabricmc.mappingio.tree.MappingTreeView
-import net.fabricmc.mappingio.tree.MemoryMappingTree
 import xyz.wagyourtail.unimined.api.minecraft.EnvType
 import java.io.Reader
 
@@ -67,59 +66,16 @@ object OlderMCPReader {
             }
         }
 
-        val parentVisitor = visitor
-//        @Suppress("NAME_SHADOWING")
-//        val visitor = MemoryMappingTree()
-
-        val visitHeader = visitor.visitHeader()
-
-        if (visitHeader) {
-            visitor.visitNamespaces(sourceNamespace, listOf(targetNamespace))
-        }
-
-        val seargeNamespace = mappingTree.getNamespaceId(sourceNamespace)
-        if (seargeNamespace == MappingTreeView.NULL_NAMESPACE_ID) {
-            throw IllegalStateException("Namespace $sourceNamespace not found")
-        }
-
-        var visitLastClass: Boolean
-
-
-        if (visitor.visitContent()) {
-            for (clazz in mappingTree.classes) {
-                val cn = clazz.getName(seargeNamespace) ?: continue
-                visitLastClass = visitor.visitClass(cn)
-
-                if (visitLastClass) {
-                    visitor.visitDstName(MappedElementKind.CLASS, 0, cn)
-                }
-            }
-
-            for (clazz in mappingTree.classes) {
-                visitLastClass = visitor.visitClass(clazz.getName(seargeNamespace) ?: continue)
-                if (visitLastClass) {
-                    visitLastClass = visitor.visitElementContent(MappedElementKind.CLASS)
-
-                    if (visitLastClass) {
-                        for (meth in clazz.methods) {
-                            if (meth.getName(seargeNamespace) in methods) {
-                                val method = methods[meth.getName(seargeNamespace)]!!
-                                visitor.visitMethod(method.source, meth.getDesc(seargeNamespace))
-                                visitor.visitDstName(MappedElementKind.METHOD, 0, method.target)
-                                visitor.visitElementContent(MappedElementKind.METHOD)
-                                if (!method.desc.isNullOrEmpty() && method.desc != "*") {
-                                    visitor.visitComment(MappedElementKind.METHOD, method.desc)
-                                }
-                            }
-                        }
-                    }
+        visitSeargeJoin(mappingTree, sourceNamespace, targetNamespace, visitor, true) { clazz, seargeNamespace ->
+            for (meth in clazz.methods.toList()) {
+                val method = methods[meth.getName(seargeNamespace) ?: continue] ?: continue
+                if (!visitor.visitMethod(method.source, meth.getDesc(seargeNamespace))) continue
+                visitor.visitDstName(MappedElementKind.METHOD, 0, method.target)
+                if (visitor.visitElementContent(MappedElementKind.METHOD) && !method.desc.isNullOrEmpty() && method.desc != "*") {
+                    visitor.visitComment(MappedElementKind.METHOD, method.desc)
                 }
             }
         }
-
-        visitor.visitEnd()
-
-//        visitor.accept(parentVisitor)
     }
 
     internal fun readParam(
@@ -190,61 +146,16 @@ object OlderMCPReader {
             }
         }
 
-        val parentVisitor = visitor
-
-        @Suppress("NAME_SHADOWING")
-        val visitor = MemoryMappingTree()
-
-        val visitHeader = visitor.visitHeader()
-
-        if (visitHeader) {
-            visitor.visitNamespaces(sourceNamespace, listOf(targetNamespace))
-        }
-
-        val seargeNamespace = mappingTree.getNamespaceId(sourceNamespace)
-        if (seargeNamespace == MappingTreeView.NULL_NAMESPACE_ID) {
-            throw IllegalStateException("Namespace $sourceNamespace not found")
-        }
-
-        var visitLastClass: Boolean
-
-
-        if (visitor.visitContent()) {
-            for (clazz in mappingTree.classes) {
-                val cn = clazz.getName(seargeNamespace) ?: continue
-                visitLastClass = visitor.visitClass(cn)
-
-                if (visitLastClass) {
-                    visitor.visitDstName(MappedElementKind.CLASS, 0, cn)
-                    visitor.visitElementContent(MappedElementKind.CLASS)
-                }
-            }
-
-            for (clazz in mappingTree.classes) {
-                visitLastClass = visitor.visitClass(clazz.getName(seargeNamespace) ?: continue)
-                if (visitLastClass) {
-                    visitLastClass = visitor.visitElementContent(MappedElementKind.CLASS)
-
-                    if (visitLastClass) {
-                        for (meth in clazz.fields) {
-                            if (meth.getName(seargeNamespace) in methods) {
-                                val method = methods[meth.getName(seargeNamespace)]!!
-                                visitor.visitField(method.source, meth.getDesc(seargeNamespace))
-                                visitor.visitDstName(MappedElementKind.FIELD, 0, method.target)
-                                visitor.visitElementContent(MappedElementKind.FIELD)
-                                if (!method.desc.isNullOrEmpty() && method.desc != "*") {
-                                    visitor.visitComment(MappedElementKind.FIELD, method.desc)
-                                }
-                            }
-                        }
-                    }
+        visitSeargeJoin(mappingTree, sourceNamespace, targetNamespace, visitor, true) { clazz, seargeNamespace ->
+            for (fd in clazz.fields.toList()) {
+                val field = methods[fd.getName(seargeNamespace) ?: continue] ?: continue
+                if (!visitor.visitField(field.source, fd.getDesc(seargeNamespace))) continue
+                visitor.visitDstName(MappedElementKind.FIELD, 0, field.target)
+                if (visitor.visitElementContent(MappedElementKind.FIELD) && !field.desc.isNullOrEmpty() && field.desc != "*") {
+                    visitor.visitComment(MappedElementKind.FIELD, field.desc)
                 }
             }
         }
-
-        visitor.visitEnd()
-
-        visitor.accept(parentVisitor)
     }
 
 
@@ -6,9 +6,9 @@ import net.fabricmc.mappingio.adapter.ForwardingMappingVisitor
 import net.fabricmc.mappingio.tree.MappingTree
 import xyz.wagyourtail.unimined.util.globToRegex
 
-class PackageRemappingVisitor(next: MappingVisitor?, val namespaces: Set<String>, matcherGlobToPackage: List<Pair<String, String>>) : ForwardingMappingVisitor(next) {
+class PackageRemappingVisitor(next: MappingVisitor?, val namespaces: Set<String>, val matcher: PackageMatcher) : ForwardingMappingVisitor(next) {
 
-    val matcherRegexToPackage = matcherGlobToPackage.map { it.first.globToRegex() to it.second }.asReversed()
+    constructor(next: MappingVisitor?, namespaces: Set<String>, matcherGlobToPackage: List<Pair<String, String>>) : this(next, namespaces, PackageMatcher(matcherGlobToPackage))
 
     lateinit var namespaceIds: Set<Int>
 
@@ -27,7 +27,7 @@ class PackageRemappingVisitor(next: MappingVisitor?, val namespaces: Set<String>
     }
 
     private fun remapClassName(name: String): String {
-        val remappedPackage = matcherRegexToPackage.firstOrNull { it.first.matches(name) }?.second
+        val remappedPackage = matcher.match(name)
         if (remappedPackage != null) {
             val cName = name.substringAfterLast('/')
             return if (remappedPackage.endsWith('/')) {
@@ -38,6 +38,28 @@ class PackageRemappingVisitor(next: MappingVisitor?, val namespaces: Set<String>
         }
         return name
     }
+
+    /**
+     * rename the matching classes directly in [tree] instead of visiting it into a new tree.
+     * only class names need to change, as destination descriptors are derived from them.
+     * @return false if the source namespace is targeted, as source names can't be changed in place.
+     */
+    fun remapInPlace(tree: MappingTree): Boolean {
+        if (tree.srcNamespace in namespaces) return false
+        val ids = tree.dstNamespaces.indices.filter { tree.dstNamespaces[it] in namespaces }
+        if (ids.isEmpty()) return true
+        for (clazz in tree.classes) {
+            for (id in ids) {
+                val name = clazz.getDstName(id) ?: continue
+                val remapped = remapClassName(name)
+                if (remapped != name) {
+                    clazz.setDstName(remapped, id)
+                }
+            }
+        }
+        return true
+    }
+
     override fun visitClass(srcName: String): Boolean {
         if (namespaceIds.contains(MappingTree.SRC_NAMESPACE_ID)) {
             return super.visitClass(remapClassName(srcName))
@@ -75,4 +97,45 @@ class PackageRemappingVisitor(next: MappingVisitor?, val namespaces: Set<String>
         }
     }
 
-}
\ No newline at end of file
+}
+
+/**
+ * matches class names against package globs, later globs take priority.
+ * globs ending in a literal class name are indexed by that name, so a lookup only tests the globs that could match it.
+ */
+class PackageMatcher(matcherGlobToPackage: List<Pair<String, String>>) {
+    private class Entry(val priority: Int, val regex: Regex, val target: String)
+
+    private val bySimpleName = mutableMapOf<String, MutableList<Entry>>()
+    private val unindexed = mutableListOf<Entry>()
+
+    init {
+        for ((i, glob) in matcherGlobToPackage.withIndex()) {
+            val entry = Entry(i, glob.first.globToRegex(), glob.second)
+            val simpleName = glob.first.substringAfterLast('/', "")
+            if (simpleName.isNotEmpty() && simpleName.none { it in "*?[]{}\\" }) {
+                bySimpleName.getOrPut(simpleName) { mutableListOf() }.add(entry)
+            } else {
+                unindexed.add(entry)
+            }
+        }
+    }
+
+    fun match(name: String): String? {
+        var best: Entry? = null
+        val candidates = bySimpleName[name.substringAfterLast('/')]
+        if (candidates != null) {
+            for (entry in candidates) {
+                if ((best == null || entry.priority > best.priority) && entry.regex.matches(name)) {
+                    best = entry
+                }
+            }
+        }
+        for (entry in unindexed) {
+            if ((best == null || entry.priority > best.priority) && entry.regex.matches(name)) {
+                best = entry
+            }
+        }
+        return best?.target
+    }
+}
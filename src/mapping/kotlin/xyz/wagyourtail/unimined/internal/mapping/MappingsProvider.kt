@@ -3,6 +3,8 @@ package xyz.wagyourtail.unimined.internal.mapping
 import com.google.gson.JsonParser
 import net.fabricmc.mappingio.MappingVisitor
 import net.fabricmc.mappingio.adapter.MappingSourceNsSwitch
+import net.fabricmc.mappingio.format.BinaryMappingReader
+import net.fabricmc.mappingio.format.BinaryMappingWriter
 import net.fabricmc.mappingio.format.MappingTreeBuilder
 import net.fabricmc.mappingio.format.ProGuardReader
 import net.fabricmc.mappingio.format.Tiny2Reader2
@@ -560,22 +562,28 @@ class MappingsProvider(project: Project, minecraft: MinecraftConfig, val mapping
 
         // if has cache and not force reload
         val cacheFile = mappingCacheFile()
+        val binaryCacheFile = mappingBinaryCacheFile()
         cacheFile.parent.createDirectories()
         val loaded = if (cacheFile.exists() && !project.unimined.forceReload) {
             project.logger.info("[Unimined/MappingsProvider] Loading mappings from cache")
             // load from cache
             try {
-                cacheFile.reader().use {
-                    MemoryMappingTree().also { map ->
+                val binary = if (!binaryCacheFile.exists()) {
+                    val map = MemoryMappingTree()
+                    cacheFile.reader().use {
                         Tiny2Reader2.read(it, map)
-                        mappings = map
                     }
+                    BinaryMappingWriter.toByteArray(map).also { BinaryMappingWriter.write(it, binaryCacheFile) }
+                } else {
+                    binaryCacheFile.readBytes()
                 }
+                mappings = loadCompactMappingTree(binary)
                 true
             } catch (e: IOException) {
                 project.logger.warn("[Unimined/MappingsProvider] Failed to load mappings from cache, reloading from deps ${e.message}")
                 // delete cache
                 cacheFile.deleteExisting()
+                binaryCacheFile.deleteIfExists()
                 false
             }
         } else false
@@ -612,12 +620,29 @@ class MappingsProvider(project: Project, minecraft: MinecraftConfig, val mapping
             cacheFile.bufferedWriter().use {
                 mappings.accept(Tiny2Writer2(it, false))
             }
+            val binary = BinaryMappingWriter.toByteArray(mappings)
+            BinaryMappingWriter.write(binary, binaryCacheFile)
+            // drop the builder's tree for the interned copy, straight from memory
+            mappings = loadCompactMappingTree(binary)
         }
 
         project.logger.lifecycle("[Unimined/MappingsProvider] Mapping tree initialized, ${mappings.srcNamespace} -> ${mappings.dstNamespaces.filter { it != "srg" }}")
         return mappings
     }
 
+    /**
+     * load a tree from the binary cache. the binary format pools its strings, so every repeated name and
+     * descriptor in the loaded tree shares a single instance.
+     */
+    private fun loadCompactMappingTree(binary: ByteArray): MappingTreeView {
+        return MemoryMappingTree().also {
+            BinaryMappingReader.read(binary, it)
+        }
+    }
+
+    /**
+     * the resolved, interned mapping tree.
+     */
     val mappingTree: MappingTreeView by lazy {
         resolveMappingTree()
     }
@@ -626,6 +651,13 @@ class MappingsProvider(project: Project, minecraft: MinecraftConfig, val mapping
         (if (hasStubs) minecraft.localCache else project.unimined.getGlobalCache())
             .resolve("mappings").resolve("${exportKey()}.tiny")
 
+    /**
+     * binary copy of [mappingCacheFile], used to load the mapping tree on a warm cache.
+     * the tiny file is still written, as it's consumed as a mapping input elsewhere.
+     */
+    public fun mappingBinaryCacheFile(): Path =
+        mappingCacheFile().resolveSibling("${exportKey()}.umb")
+
     public fun exportKey(): String =
         "${mappingKey}-${side}-${combinedNames}"
 
@@ -643,10 +675,6 @@ class MappingsProvider(project: Project, minecraft: MinecraftConfig, val mapping
         sha.digest().toHex().substring(0..8)
     }
 
-    private fun memberOf(className: String, memberName: String, descriptor: String?): IMappingProvider.Member {
-        return IMappingProvider.Member(className, memberName, descriptor)
-    }
-
 //    private fun fixInnerClassName(
 //        mappings: MappingTreeView,
 //        fromId: Int,
@@ -682,36 +710,207 @@ class MappingsProvider(project: Project, minecraft: MinecraftConfig, val mapping
 //        return fixedClassName
 //    }
 
+    private val trMappingTables = mutableMapOf<Pair<List<String>, Boolean>, TRMappingTable?>()
+
+    fun trMappingTableFile(remap: Pair<Namespace, Namespace>, remapLocals: Boolean): Path =
+        trMappingTableFile(remap.toList(), remapLocals)
+
+    fun trMappingTableFile(path: List<Namespace>, remapLocals: Boolean): Path =
+        mappingCacheFile().resolveSibling("${exportKey()}-${path.joinToString("-") { it.name }}${if (remapLocals) "-locals" else ""}.trm")
+
+    /**
+     * get the remap table for a namespace pair, loading it from next to the mapping cache if possible.
+     * the table is only built from [mappingTree] if it isn't cached yet.
+     */
+    fun getTRMappingTable(remap: Pair<Namespace, Namespace>, remapLocals: Boolean): TRMappingTable {
+        return getTRMappingTable(remap.toList(), remapLocals)!!
+    }
+
+    /**
+     * get the remap table for a whole remap path, or null if it can't be composed into a single table.
+     */
+    fun getTRMappingTable(path: List<Namespace>, remapLocals: Boolean): TRMappingTable? {
+        if (path.size < 2) throw IllegalArgumentException("remap path must contain at least 2 namespaces: $path")
+        val key = path.map { it.name } to remapLocals
+        synchronized(trMappingTables) {
+            if (key in trMappingTables) return trMappingTables[key]
+        }
+        val tableFile = trMappingTableFile(path, remapLocals)
+        // marks a path that was already found not to compose
+        val uncomposable = tableFile.resolveSibling("${tableFile.name}.none")
+        if (uncomposable.exists() && mappingCacheFile().exists() && !project.unimined.forceReload) {
+            synchronized(trMappingTables) {
+                trMappingTables[key] = null
+            }
+            return null
+        }
+        val table = if (tableFile.exists() && mappingCacheFile().exists() && !project.unimined.forceReload) {
+            try {
+                TRMappingTable.read(tableFile)
+            } catch (e: IOException) {
+                project.logger.warn("[Unimined/MappingsProvider] Failed to load remap table ${tableFile.name}, rebuilding ${e.message}")
+                null
+            }
+        } else null
+        val result = table ?: if (path.size == 2) {
+            buildTRMappingTable(path[0] to path[1], remapLocals)
+        } else {
+            composeTRMappingTable(path, remapLocals)
+        }
+        if (table == null) {
+            tableFile.parent.createDirectories()
+            if (result != null) {
+                result.write(tableFile)
+                uncomposable.deleteIfExists()
+            } else {
+                uncomposable.writeText("")
+            }
+        }
+        synchronized(trMappingTables) {
+            if (key in trMappingTables) return trMappingTables[key]
+            trMappingTables[key] = result
+            return result
+        }
+    }
+
     override fun getTRMappings(
         remap: Pair<Namespace, Namespace>,
         remapLocals: Boolean,
     ) : (IMappingProvider.MappingAcceptor) -> Unit {
         this.freeze()
         return { acceptor ->
-            val srcName = remap.first
-            val dstName = remap.second
+            getTRMappingTable(remap, remapLocals).accept(acceptor)
+        }
+    }
 
-            val fromId = mappingTree.getNamespaceId(srcName.name)
-            val toId = mappingTree.getNamespaceId(dstName.name)
+    override fun getComposedTRMappings(
+        path: List<Namespace>,
+        remapLocals: Boolean,
+    ): ((IMappingProvider.MappingAcceptor) -> Unit)? {
+        this.freeze()
+        val table = getTRMappingTable(path, remapLocals) ?: return null
+        return { acceptor ->
+            table.accept(acceptor)
+        }
+    }
 
-            if (fromId == MappingTreeView.NULL_NAMESPACE_ID) {
-                throw IllegalArgumentException("Unknown source namespace: $srcName")
+    /**
+     * flatten a remap path into a single table.
+     * every element ends up with the last name it has along the path, which is what remapping one step at a time
+     * produces as long as the names along the path have no gaps. if an element is missing a name in one namespace
+     * but has one further along, the steps can't be composed and null is returned.
+     */
+    private fun composeTRMappingTable(
+        path: List<Namespace>,
+        remapLocals: Boolean,
+    ): TRMappingTable? {
+        val ids = path.map {
+            val id = mappingTree.getNamespaceId(it.name)
+            if (id == MappingTreeView.NULL_NAMESPACE_ID) {
+                throw IllegalArgumentException("Unknown namespace: $it")
             }
+            id
+        }
 
-            if (toId == MappingTreeView.NULL_NAMESPACE_ID) {
-                throw IllegalArgumentException("Unknown target namespace: $dstName")
+        // index in path of the last name, -1 if there are none, or null if the names have a gap
+        fun lastNamed(element: MappingTreeView.ElementMappingView): Int? {
+            var last = -1
+            for (i in ids.indices) {
+                if (element.getName(ids[i]) == null) continue
+                if (last != i - 1) {
+                    project.logger.info("[Unimined/MappingsProvider] Cannot compose remap path ${path.joinToString(" -> ")}, $element has no name in ${path[i - 1]}")
+                    return null
+                }
+                last = i
             }
+            return last
+        }
+
+        fun lastName(element: MappingTreeView.ElementMappingView): String? {
+            for (i in ids.size - 1 downTo 1) {
+                element.getName(ids[i])?.let { return it }
+            }
+            return null
+        }
+
+        val builder = TRMappingTable.Builder()
+
+        for (classDef in mappingTree.classes) {
+            val lastClass = lastNamed(classDef) ?: return null
+            if (lastClass == -1) continue
+            val fromClassName = classDef.getName(ids[0])!!
+
+            builder.acceptClass(fromClassName, classDef.getName(ids[lastClass])!!)
+
+            for (fieldDef in classDef.fields) {
+                val last = lastNamed(fieldDef) ?: return null
+                if (last < 1) continue
+                builder.acceptField(fromClassName, fieldDef.getName(ids[0])!!, fieldDef.getDesc(ids[0]), fieldDef.getName(ids[last])!!)
+            }
+
+            for (methodDef in classDef.methods) {
+                val last = lastNamed(methodDef) ?: return null
+                if (last < 1) continue
+                val method = builder.acceptMethod(fromClassName, methodDef.getName(ids[0])!!, methodDef.getDesc(ids[0])!!, methodDef.getName(ids[last])!!)
 
-            for (classDef in mappingTree.classes) {
-                var fromClassName = classDef.getName(fromId)
-                var toClassName = classDef.getName(toId)
+                if (remapLocals) {
+                    for (arg in methodDef.args) {
+                        val toArgName = lastName(arg)
 
-                if (fromClassName == null) {
-                    if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target class {} has no name in src namespace {}", classDef, srcName)
-                    fromClassName = toClassName
+                        if (toArgName != null) {
+                            builder.acceptMethodArg(method, arg.lvIndex, toArgName)
+                        }
+                    }
+
+                    for (localVar in methodDef.vars) {
+                        val toLocalVarName = lastName(localVar)
+
+                        if (toLocalVarName != null) {
+                            builder.acceptMethodVar(
+                                method,
+                                localVar.lvIndex,
+                                localVar.startOpIdx,
+                                localVar.lvtRowIndex,
+                                toLocalVarName
+                            )
+                        }
+                    }
                 }
+            }
+        }
+        return builder.build()
+    }
+
+    private fun buildTRMappingTable(
+        remap: Pair<Namespace, Namespace>,
+        remapLocals: Boolean,
+    ): TRMappingTable {
+        val srcName = remap.first
+        val dstName = remap.second
+
+        val fromId = mappingTree.getNamespaceId(srcName.name)
+        val toId = mappingTree.getNamespaceId(dstName.name)
+
+        if (fromId == MappingTreeView.NULL_NAMESPACE_ID) {
+            throw IllegalArgumentException("Unknown source namespace: $srcName")
+        }
+
+        if (toId == MappingTreeView.NULL_NAMESPACE_ID) {
+            throw IllegalArgumentException("Unknown target namespace: $dstName")
+        }
+
+        val builder = TRMappingTable.Builder()
+
+        for (classDef in mappingTree.classes) {
+            var fromClassName = classDef.getName(fromId)
+            var toClassName = classDef.getName(toId)
+
+            if (fromClassName == null) {
+                if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target class {} has no name in src namespace {}", classDef, srcName)
+                fromClassName = toClassName
+            }
 
-                // detect missing inner class
+            // detect missing inner class
 //            if (fromClassName != null && fromClassName.contains("$")) {
 //                toClassName = fixInnerClassName(
 //                    mappingTree,
@@ -722,78 +921,76 @@ class MappingsProvider(project: Project, minecraft: MinecraftConfig, val mapping
 //                )
 //            }
 
-                if (toClassName == null) {
-                    if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target class {} has no name in dst namespace {}", classDef, dstName)
-                    toClassName = fromClassName
-                }
-
-                if (fromClassName == null) {
-                    if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Class $classDef has no name in either namespace $srcName or $dstName")
-                    continue
-                }
+            if (toClassName == null) {
+                if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target class {} has no name in dst namespace {}", classDef, dstName)
+                toClassName = fromClassName
+            }
 
-                acceptor.acceptClass(fromClassName, toClassName)
+            if (fromClassName == null) {
+                if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Class $classDef has no name in either namespace $srcName or $dstName")
+                continue
+            }
 
-                for (fieldDef in classDef.fields) {
-                    val fromFieldName = fieldDef.getName(fromId)
-                    val toFieldName = fieldDef.getName(toId)
+            builder.acceptClass(fromClassName, toClassName!!)
 
-                    if (fromFieldName == null) {
-                        if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target field {} has no name in src namespace {}", fieldDef, srcName)
-                        continue
-                    }
+            for (fieldDef in classDef.fields) {
+                val fromFieldName = fieldDef.getName(fromId)
+                val toFieldName = fieldDef.getName(toId)
 
-                    if (toFieldName == null) {
-                        if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target field {} has no name in dst namespace {}", fieldDef, dstName)
-                        continue
-                    }
+                if (fromFieldName == null) {
+                    if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target field {} has no name in src namespace {}", fieldDef, srcName)
+                    continue
+                }
 
-                    acceptor.acceptField(memberOf(fromClassName, fromFieldName, fieldDef.getDesc(fromId)), toFieldName)
+                if (toFieldName == null) {
+                    if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target field {} has no name in dst namespace {}", fieldDef, dstName)
+                    continue
                 }
 
-                for (methodDef in classDef.methods) {
-                    val fromMethodName = methodDef.getName(fromId)
-                    val toMethodName = methodDef.getName(toId)
+                builder.acceptField(fromClassName, fromFieldName, fieldDef.getDesc(fromId), toFieldName)
+            }
 
-                    if (fromMethodName == null) {
-                        if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target method {} has no name in src namespace {}", methodDef, srcName)
-                        continue
-                    }
+            for (methodDef in classDef.methods) {
+                val fromMethodName = methodDef.getName(fromId)
+                val toMethodName = methodDef.getName(toId)
 
-                    if (toMethodName == null) {
-                        if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target method {} has no name in dst namespace {}", methodDef, dstName)
-                        continue
-                    }
+                if (fromMethodName == null) {
+                    if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target method {} has no name in src namespace {}", methodDef, srcName)
+                    continue
+                }
 
-                    val method = memberOf(fromClassName, fromMethodName, methodDef.getDesc(fromId)!!)
+                if (toMethodName == null) {
+                    if (project.logger.isDebugEnabled) project.logger.debug("[Unimined/MappingsProvider] Target method {} has no name in dst namespace {}", methodDef, dstName)
+                    continue
+                }
 
-                    acceptor.acceptMethod(method, toMethodName)
+                val method = builder.acceptMethod(fromClassName, fromMethodName, methodDef.getDesc(fromId)!!, toMethodName)
 
-                    if (remapLocals) {
-                        for (arg in methodDef.args) {
-                            val toArgName = arg.getName(toId)
+                if (remapLocals) {
+                    for (arg in methodDef.args) {
+                        val toArgName = arg.getName(toId)
 
-                            if (toArgName != null) {
-                                acceptor.acceptMethodArg(method, arg.lvIndex, toArgName)
-                            }
+                        if (toArgName != null) {
+                            builder.acceptMethodArg(method, arg.lvIndex, toArgName)
                         }
+                    }
 
-                        for (localVar in methodDef.vars) {
-                            val toLocalVarName = localVar.getName(toId)
-
-                            if (toLocalVarName != null) {
-                                acceptor.acceptMethodVar(
-                                    method,
-                                    localVar.lvIndex,
-                                    localVar.startOpIdx,
-                                    localVar.lvtRowIndex,
-                                    toLocalVarName
-                                )
-                            }
+                    for (localVar in methodDef.vars) {
+                        val toLocalVarName = localVar.getName(toId)
+
+                        if (toLocalVarName != null) {
+                            builder.acceptMethodVar(
+                                method,
+                                localVar.lvIndex,
+                                localVar.startOpIdx,
+                                localVar.lvtRowIndex,
+                                toLocalVarName
+                            )
                         }
                     }
                 }
             }
         }
+        return builder.build()
     }
 }
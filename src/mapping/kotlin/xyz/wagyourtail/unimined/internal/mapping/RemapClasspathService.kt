@@ -0,0 +1,123 @@
+package xyz.wagyourtail.unimined.internal.mapping
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream
+import org.gradle.api.Project
+import org.gradle.api.invocation.Gradle
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter
+import xyz.wagyourtail.unimined.api.unimined
+import xyz.wagyourtail.unimined.util.forEachInZip
+import xyz.wagyourtail.unimined.util.getSha1
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.CRC32
+import kotlin.io.path.*
+
+/**
+ * library classpaths for tiny-remapper, shared by every remap in a build.
+ *
+ * each library is reduced once, keyed by its digest, to an abi snapshot: its classes without method bodies or
+ * debug info, which is all tiny-remapper needs of the classpath. the snapshots of a set of libraries are then
+ * bundled into a single uncompressed jar, first jar wins, so each remapper reads one small, already inflated
+ * archive instead of opening, inflating and parsing every library again.
+ */
+class RemapClasspathService private constructor(private val directory: Path) {
+
+    companion object {
+        private val services = WeakHashMap<Gradle, RemapClasspathService>()
+
+        @Synchronized
+        fun get(project: Project): RemapClasspathService {
+            return services.getOrPut(project.gradle) {
+                RemapClasspathService(project.unimined.getGlobalCache().resolve("remap-classpath"))
+            }
+        }
+    }
+
+    private val snapshots = ConcurrentHashMap<String, Path>()
+    private val bundles = ConcurrentHashMap<String, Path>()
+
+    /**
+     * [classpath], with the jars in [libraries] replaced by their bundle, where the first of them was.
+     */
+    fun classpath(classpath: List<Path>, libraries: Collection<Path>): Array<Path> {
+        val shared = libraries.filter { it.isRegularFile() && (it.extension == "jar" || it.extension == "zip") }.toSet()
+        if (shared.isEmpty()) return classpath.toTypedArray()
+        val bundle = bundle(classpath.filter { it in shared })
+        val result = mutableListOf<Path>()
+        for (path in classpath) {
+            if (path !in shared) {
+                result.add(path)
+            } else if (bundle !in result) {
+                result.add(bundle)
+            }
+        }
+        return result.toTypedArray()
+    }
+
+    /**
+     * the abi snapshot of [jar], in the global cache by the jar's digest.
+     */
+    fun snapshot(jar: Path): Path {
+        return snapshots.computeIfAbsent(jar.getSha1()) { sha1 ->
+            val snapshot = directory.resolve("abi").createDirectories().resolve("$sha1.jar")
+            if (!snapshot.exists()) {
+                writeAtomic(snapshot) { output ->
+                    jar.forEachInZip { path, stream ->
+                        if (!path.endsWith(".class")) return@forEachInZip
+                        val reader = ClassReader(stream.readBytes())
+                        val writer = ClassWriter(0)
+                        reader.accept(writer, ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+                        output.putStored(path, writer.toByteArray())
+                    }
+                }
+            }
+            snapshot
+        }
+    }
+
+    private fun bundle(jars: List<Path>): Path {
+        val parts = jars.map { snapshot(it) }
+        val key = parts.joinToString("\n") { it.fileName.toString() }
+        return bundles.computeIfAbsent(key) {
+            val digest = MessageDigest.getInstance("SHA-1").digest(key.toByteArray())
+            val bundle = directory.createDirectories().resolve(digest.joinToString("") { "%02x".format(it) } + ".jar")
+            if (!bundle.exists()) {
+                val written = mutableSetOf<String>()
+                writeAtomic(bundle) { output ->
+                    for (part in parts) {
+                        part.forEachInZip { path, stream ->
+                            if (written.add(path)) output.putStored(path, stream.readBytes())
+                        }
+                    }
+                }
+            }
+            bundle
+        }
+    }
+
+    private fun ZipArchiveOutputStream.putStored(path: String, bytes: ByteArray) {
+        val entry = ZipArchiveEntry(path)
+        entry.method = ZipArchiveEntry.STORED
+        entry.size = bytes.size.toLong()
+        entry.crc = CRC32().apply { update(bytes) }.value
+        putArchiveEntry(entry)
+        write(bytes)
+        closeArchiveEntry()
+    }
+
+    private fun writeAtomic(target: Path, write: (ZipArchiveOutputStream) -> Unit) {
+        val temp = Files.createTempFile(target.parent, target.fileName.toString(), ".tmp")
+        try {
+            ZipArchiveOutputStream(temp.outputStream()).use(write)
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package xyz.wagyourtail.unimined.internal.mapping
+
+import net.fabricmc.tinyremapper.IMappingProvider
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.inputStream
+import kotlin.io.path.outputStream
+
+/**
+ * flattened remap table for a single (from, to) namespace pair, in the shape tiny-remapper consumes it.
+ * every entry is an index into [strings], so the table can be kept in memory and persisted cheaply.
+ */
+class TRMappingTable private constructor(
+    private val strings: Array<String>,
+    /** (from, to) */
+    private val classes: IntArray,
+    /** (owner, name, desc, to) */
+    private val fields: IntArray,
+    /** (owner, name, desc, to) */
+    private val methods: IntArray,
+    /** (method, lvIndex, to) */
+    private val args: IntArray,
+    /** (method, lvIndex, startOpIdx, lvtRowIndex, to) */
+    private val vars: IntArray,
+) {
+
+    companion object {
+        private const val MAGIC = 0x55545254 // UTRT
+        private const val VERSION = 1
+        private const val NULL_STRING = -1
+
+        fun read(path: Path): TRMappingTable {
+            DataInputStream(path.inputStream().buffered()).use { input ->
+                if (input.readInt() != MAGIC) throw IOException("invalid remap table: bad magic")
+                val version = input.readInt()
+                if (version != VERSION) throw IOException("unsupported remap table version $version")
+                val strings = Array(input.readInt()) { input.readUTF() }
+                fun readInts() = IntArray(input.readInt()) { input.readInt() }
+                return TRMappingTable(strings, readInts(), readInts(), readInts(), readInts(), readInts())
+            }
+        }
+    }
+
+    val classCount get() = classes.size / 2
+    val fieldCount get() = fields.size / 4
+    val methodCount get() = methods.size / 4
+
+    private fun str(id: Int) = if (id == NULL_STRING) null else strings[id]
+
+    fun accept(acceptor: IMappingProvider.MappingAcceptor) {
+        for (i in classes.indices step 2) {
+            acceptor.acceptClass(strings[classes[i]], strings[classes[i + 1]])
+        }
+        for (i in fields.indices step 4) {
+            acceptor.acceptField(
+                IMappingProvider.Member(strings[fields[i]], strings[fields[i + 1]], str(fields[i + 2])),
+                strings[fields[i + 3]]
+            )
+        }
+        val members = arrayOfNulls<IMappingProvider.Member>(methods.size / 4)
+        for (i in methods.indices step 4) {
+            val member = IMappingProvider.Member(strings[methods[i]], strings[methods[i + 1]], str(methods[i + 2]))
+            members[i / 4] = member
+            acceptor.acceptMethod(member, strings[methods[i + 3]])
+        }
+        for (i in args.indices step 3) {
+            acceptor.acceptMethodArg(members[args[i]], args[i + 1], strings[args[i + 2]])
+        }
+        for (i in vars.indices step 5) {
+            acceptor.acceptMethodVar(members[vars[i]], vars[i + 1], vars[i + 2], vars[i + 3], strings[vars[i + 4]])
+        }
+    }
+
+    fun write(path: Path) {
+        val temp = Files.createTempFile(path.parent, path.fileName.toString(), ".tmp")
+        try {
+            DataOutputStream(temp.outputStream().buffered()).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeInt(strings.size)
+                for (string in strings) output.writeUTF(string)
+                for (ints in listOf(classes, fields, methods, args, vars)) {
+                    output.writeInt(ints.size)
+                    for (i in ints) output.writeInt(i)
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+
+    class Builder {
+        private val stringIds = LinkedHashMap<String, Int>()
+        private val classes = IntList()
+        private val fields = IntList()
+        private val methods = IntList()
+        private val args = IntList()
+        private val vars = IntList()
+
+        private fun id(value: String?): Int {
+            if (value == null) return NULL_STRING
+            return stringIds.getOrPut(value) { stringIds.size }
+        }
+
+        fun acceptClass(from: String, to: String) {
+            classes.add(id(from), id(to))
+        }
+
+        fun acceptField(owner: String, name: String, desc: String?, to: String) {
+            fields.add(id(owner), id(name), id(desc), id(to))
+        }
+
+        /**
+         * @return the method index, to be passed to [acceptMethodArg] and [acceptMethodVar]
+         */
+        fun acceptMethod(owner: String, name: String, desc: String, to: String): Int {
+            methods.add(id(owner), id(name), id(desc), id(to))
+            return methods.size / 4 - 1
+        }
+
+        fun acceptMethodArg(method: Int, lvIndex: Int, to: String) {
+            args.add(method, lvIndex, id(to))
+        }
+
+        fun acceptMethodVar(method: Int, lvIndex: Int, startOpIdx: Int, lvtRowIndex: Int, to: String) {
+            vars.add(method, lvIndex, startOpIdx, lvtRowIndex, id(to))
+        }
+
+        fun build() = TRMappingTable(
+            stringIds.keys.toTypedArray(),
+            classes.toArray(),
+            fields.toArray(),
+            methods.toArray(),
+            args.toArray(),
+            vars.toArray()
+        )
+    }
+
+    private class IntList {
+        private var data = IntArray(64)
+        var size = 0
+            private set
+
+        fun add(vararg values: Int) {
+            if (size + values.size > data.size) {
+                data = data.copyOf(maxOf(data.size * 2, size + values.size))
+            }
+            System.arraycopy(values, 0, data, size, values.size)
+            size += values.size
+        }
+
+        fun toArray(): IntArray = data.copyOf(size)
+    }
+}
@@ -0,0 +1,234 @@
+package xyz.wagyourtail.unimined.internal.mapping.at
+
+import net.neoforged.accesstransformer.AccessTransformer
+import net.neoforged.accesstransformer.AccessTransformer.Modifier
+import net.neoforged.accesstransformer.InnerClassTarget
+import net.neoforged.accesstransformer.MethodTarget
+import net.neoforged.accesstransformer.Target
+import net.neoforged.accesstransformer.TargetType
+import net.neoforged.accesstransformer.parser.AccessTransformerList
+import org.gradle.api.logging.Logger
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.FieldVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import xyz.wagyourtail.unimined.util.ClassTransform
+import java.nio.file.Path
+import kotlin.io.path.name
+
+/**
+ * access transformers grouped by the class they change, applied in process with asm.
+ */
+class AccessTransformerSet private constructor(private val classes: Map<String, ClassEntry>) {
+
+    class Change(val modifier: Modifier, val finalState: AccessTransformer.FinalState)
+
+    private class ClassEntry {
+        val self = mutableListOf<Change>()
+        val fields = mutableMapOf<String, MutableList<Change>>()
+        /** by name + desc */
+        val methods = mutableMapOf<String, MutableList<Change>>()
+        val allFields = mutableListOf<Change>()
+        val allMethods = mutableListOf<Change>()
+
+        fun fieldChanges(name: String) = allFields + (fields[name] ?: emptyList())
+
+        fun methodChanges(name: String, desc: String) = allMethods + (methods[name + desc] ?: emptyList())
+    }
+
+    companion object {
+
+        /**
+         * read access transformers in the modern format.
+         */
+        fun read(at: Path): AccessTransformerSet {
+            val list = AccessTransformerList()
+            list.loadFromPath(at, at.name)
+
+            val targetAccess = AccessTransformer::class.java.getField("targetAccess")
+            val targetFinalState = AccessTransformer::class.java.getField("targetFinalState")
+            val targetMember = AccessTransformer::class.java.getField("memberTarget")
+
+            val classes = mutableMapOf<String, ClassEntry>()
+            list.accessTransformers.forEach { (_, transformers) ->
+                transformers.forEach {
+                    val change = Change(targetAccess.get(it) as Modifier, targetFinalState.get(it) as AccessTransformer.FinalState)
+                    val member = targetMember.get(it) as Target<*>
+                    val owner = member.className.replace(".", "/")
+
+                    when (member.type) {
+                        TargetType.FIELD -> {
+                            classes.getOrPut(owner) { ClassEntry() }.fields.getOrPut(member.targetName()) { mutableListOf() }.add(change)
+                        }
+
+                        TargetType.METHOD -> {
+                            classes.getOrPut(owner) { ClassEntry() }.methods.getOrPut((member as MethodTarget).targetName()) { mutableListOf() }.add(change)
+                        }
+
+                        else -> {
+                            when {
+                                member is InnerClassTarget -> {
+                                    classes.getOrPut(owner + "$" + member.targetName()) { ClassEntry() }.self.add(change)
+                                }
+
+                                member.targetName() == "*METHOD*" -> {
+                                    classes.getOrPut(owner) { ClassEntry() }.allMethods.add(change)
+                                }
+
+                                member.targetName() == "*FIELD*" -> {
+                                    classes.getOrPut(owner) { ClassEntry() }.allFields.add(change)
+                                }
+
+                                else -> {
+                                    classes.getOrPut(owner) { ClassEntry() }.self.add(change)
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return AccessTransformerSet(classes)
+        }
+
+        /**
+         * widen [access] to the change's modifier, access transformers never narrow it.
+         */
+        fun applyChange(access: Int, change: Change): Int {
+            val current = access and (Opcodes.ACC_PUBLIC or Opcodes.ACC_PROTECTED or Opcodes.ACC_PRIVATE)
+            var result = if (rank(change.modifier) > rank(current)) {
+                (access and (Opcodes.ACC_PUBLIC or Opcodes.ACC_PROTECTED or Opcodes.ACC_PRIVATE).inv()) or flag(change.modifier)
+            } else access
+            when (change.finalState) {
+                AccessTransformer.FinalState.MAKEFINAL -> result = result or Opcodes.ACC_FINAL
+                AccessTransformer.FinalState.REMOVEFINAL -> result = result and Opcodes.ACC_FINAL.inv()
+                else -> {}
+            }
+            return result
+        }
+
+        /**
+         * class files can only be public or package private, the rest is in the inner class attribute.
+         */
+        private fun applyClassChange(access: Int, change: Change): Int {
+            val modifier = when (change.modifier) {
+                Modifier.PROTECTED -> Modifier.PUBLIC
+                Modifier.PRIVATE -> Modifier.DEFAULT
+                else -> change.modifier
+            }
+            return applyChange(access, Change(modifier, change.finalState))
+        }
+
+        private fun rank(flag: Int) = when (flag) {
+            Opcodes.ACC_PUBLIC -> 3
+            Opcodes.ACC_PROTECTED -> 2
+            Opcodes.ACC_PRIVATE -> 0
+            else -> 1
+        }
+
+        private fun rank(modifier: Modifier) = rank(flag(modifier))
+
+        private fun flag(modifier: Modifier) = when (modifier) {
+            Modifier.PUBLIC -> Opcodes.ACC_PUBLIC
+            Modifier.PROTECTED -> Opcodes.ACC_PROTECTED
+            Modifier.PRIVATE -> Opcodes.ACC_PRIVATE
+            else -> 0
+        }
+    }
+
+    /**
+     * internal names of every targeted class, and of the outer classes whose inner class attributes list one.
+     */
+    val targets: Set<String> by lazy {
+        val targets = mutableSetOf<String>()
+        for ((name, entry) in classes) {
+            targets.add(name)
+            if (entry.self.isNotEmpty() && '$' in name) {
+                targets.add(name.substringBeforeLast('$'))
+            }
+        }
+        targets
+    }
+
+    fun classTransform(logger: Logger): ClassTransform {
+        return ClassTransform(
+            targets,
+            { _, next -> Visitor(next) },
+            { missing ->
+                logger.info("[Unimined/AccessTransformer] Access transformers target classes that don't exist: $missing")
+            }
+        )
+    }
+
+    private inner class Visitor(next: ClassVisitor) : ClassVisitor(Opcodes.ASM9, next) {
+        private var entry: ClassEntry? = null
+        private lateinit var className: String
+        private var isInterface = false
+
+        override fun visit(
+            version: Int,
+            access: Int,
+            name: String,
+            signature: String?,
+            superName: String?,
+            interfaces: Array<out String>?
+        ) {
+            entry = classes[name]
+            className = name
+            isInterface = access and Opcodes.ACC_INTERFACE != 0
+            var newAccess = access
+            entry?.self?.forEach { newAccess = applyClassChange(newAccess, it) }
+            super.visit(version, newAccess, name, signature, superName, interfaces)
+        }
+
+        override fun visitInnerClass(name: String, outerName: String?, innerName: String?, access: Int) {
+            var newAccess = access
+            classes[name]?.self?.forEach { newAccess = applyChange(newAccess, it) }
+            super.visitInnerClass(name, outerName, innerName, newAccess)
+        }
+
+        override fun visitField(
+            access: Int,
+            name: String,
+            descriptor: String,
+            signature: String?,
+            value: Any?
+        ): FieldVisitor? {
+            var newAccess = access
+            entry?.fieldChanges(name)?.forEach { newAccess = applyChange(newAccess, it) }
+            return super.visitField(newAccess, name, descriptor, signature, value)
+        }
+
+        override fun visitMethod(
+            access: Int,
+            name: String,
+            descriptor: String,
+            signature: String?,
+            exceptions: Array<out String>?
+        ): MethodVisitor? {
+            val entry = entry
+            var newAccess = access
+            entry?.methodChanges(name, descriptor)?.forEach { newAccess = applyChange(newAccess, it) }
+            val visitor = super.visitMethod(newAccess, name, descriptor, signature, exceptions)
+            if (entry == null || visitor == null) return visitor
+            return object : MethodVisitor(Opcodes.ASM9, visitor) {
+                override fun visitMethodInsn(
+                    opcode: Int,
+                    owner: String,
+                    name: String,
+                    descriptor: String,
+                    isInterface: Boolean
+                ) {
+                    // private methods that aren't anymore have to be called virtually
+                    if (opcode == Opcodes.INVOKESPECIAL && owner == className && name != "<init>" &&
+                        entry.methodChanges(name, descriptor).any { it.modifier != Modifier.PRIVATE }
+                    ) {
+                        val newOpcode = if (this@Visitor.isInterface) Opcodes.INVOKEINTERFACE else Opcodes.INVOKEVIRTUAL
+                        super.visitMethodInsn(newOpcode, owner, name, descriptor, isInterface)
+                        return
+                    }
+                    super.visitMethodInsn(opcode, owner, name, descriptor, isInterface)
+                }
+            }
+        }
+    }
+}
@@ -3,17 +3,13 @@ package xyz.wagyourtail.unimined.internal.mapping.aw
 import net.fabricmc.accesswidener.*
 import net.fabricmc.tinyremapper.OutputConsumerPath
 import net.fabricmc.tinyremapper.TinyRemapper
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry
-import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream
 import org.gradle.api.logging.Logger
-import org.objectweb.asm.ClassReader
-import org.objectweb.asm.ClassWriter
 import org.objectweb.asm.Opcodes
 import xyz.wagyourtail.unimined.api.mapping.MappingNamespaceTree
 import xyz.wagyourtail.unimined.api.minecraft.MinecraftConfig
 import xyz.wagyourtail.unimined.internal.mapping.MappingsProvider
-import xyz.wagyourtail.unimined.util.forEachInZip
-import xyz.wagyourtail.unimined.util.openZipFileSystem
+import xyz.wagyourtail.unimined.util.ClassTransform
+import xyz.wagyourtail.unimined.util.transformClasses
 import java.io.BufferedReader
 import java.io.ByteArrayInputStream
 import java.io.InputStream
@@ -21,7 +17,6 @@ import java.io.InputStreamReader
 import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 import java.nio.file.Path
-import java.nio.file.StandardCopyOption
 import java.nio.file.StandardOpenOption
 import kotlin.io.path.*
 
@@ -62,69 +57,52 @@ object AccessWidenerApplier {
         }
     }
 
-    fun transform(
+    /**
+     * the access widener as a [ClassTransform], or null if it isn't in [namespace].
+     */
+    fun classTransform(
         accessWidener: Path,
         namespace: String,
-        baseMinecraft: Path,
-        output: Path,
         throwIfNSWrong: Boolean,
         logger: Logger
-    ): Boolean {
+    ): ClassTransform? {
         val aw = AccessWidener()
         AccessWidenerReader(aw).read(BufferedReader(accessWidener.reader()))
         if (aw.namespace == namespace) {
-            Files.copy(baseMinecraft, output, StandardCopyOption.REPLACE_EXISTING)
-            try {
-                val targets = aw.targets.toMutableSet()
-                ZipArchiveOutputStream(output.outputStream()).use { zipOutput ->
-                    logger.debug("Transforming $output with access widener $accessWidener and namespace $namespace")
-                    baseMinecraft.forEachInZip { path, stream ->
-                        if (path.endsWith(".class")) {
-                            val target = path.removeSuffix(".class").replace("/", ".")
-                            if (target in targets) {
-                                try {
-                                    logger.debug("Transforming $path")
-                                    val reader = ClassReader(stream)
-                                    val writer = ClassWriter(0)
-                                    val visitor = AccessWidenerClassVisitor.createClassVisitor(Opcodes.ASM9, writer, aw)
-                                    reader.accept(visitor, 0)
-                                    zipOutput.putArchiveEntry(ZipArchiveEntry(path))
-                                    zipOutput.write(writer.toByteArray())
-                                    zipOutput.closeArchiveEntry()
-                                } catch (e: Exception) {
-                                    logger.warn(
-                                        "An error occurred while transforming $target with access widener $accessWidener for namespace $namespace in $output",
-                                        e
-                                    )
-                                }
-                                targets.remove(target)
-                            } else {
-                                zipOutput.putArchiveEntry(ZipArchiveEntry(path))
-                                stream.copyTo(zipOutput)
-                                zipOutput.closeArchiveEntry()
-                            }
-                        } else {
-                            zipOutput.putArchiveEntry(ZipArchiveEntry(path))
-                            stream.copyTo(zipOutput)
-                            zipOutput.closeArchiveEntry()
-                        }
-                    }
+            return ClassTransform(
+                aw.targets.mapTo(mutableSetOf()) { it.replace(".", "/") },
+                { _, next -> AccessWidenerClassVisitor.createClassVisitor(Opcodes.ASM9, next, aw) },
+                { targets ->
+                    logger.warn("AccessWidener $accessWidener did not find the following classes: ${targets.map { it.replace("/", ".") }}")
+                },
+                { target, e ->
+                    logger.warn(
+                        "An error occurred while transforming $target with access widener $accessWidener for namespace $namespace",
+                        e
+                    )
                 }
-                if (targets.isNotEmpty()) {
-                    logger.warn("AccessWidener $accessWidener did not find the following classes: $targets")
-                }
-            } catch (e: Exception) {
-                output.deleteIfExists()
-                throw e
-            }
-            return true
+            )
         }
         if (throwIfNSWrong) {
             throw IllegalStateException("AccessWidener namespace (${aw.namespace}) does not match minecraft namespace ($namespace)")
         } else {
             logger.info("AccessWidener ($accessWidener) namespace (${aw.namespace}) does not match minecraft namespace ($namespace), it will not be applied!")
         }
-        return false
+        return null
+    }
+
+    fun transform(
+        accessWidener: Path,
+        namespace: String,
+        baseMinecraft: Path,
+        output: Path,
+        throwIfNSWrong: Boolean,
+        logger: Logger
+    ): Boolean {
+        val transform = classTransform(accessWidener, namespace, throwIfNSWrong, logger) ?: return false
+        logger.debug("Transforming $output with access widener $accessWidener and namespace $namespace")
+        baseMinecraft.transformClasses(output, listOf(transform))
+        return true
     }
 
     fun mergeAws(
@@ -1,16 +1,11 @@
 package xyz.wagyourtail.unimined.internal.mapping.ii
 
 import org.gradle.api.logging.Logger
-import org.objectweb.asm.ClassReader
-import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.Opcodes
-import org.objectweb.asm.tree.ClassNode
-import xyz.wagyourtail.unimined.util.openZipFileSystem
-import java.nio.file.Files
+import xyz.wagyourtail.unimined.util.ClassTransform
+import xyz.wagyourtail.unimined.util.transformClasses
 import java.nio.file.Path
-import java.nio.file.StandardCopyOption
-import java.nio.file.StandardOpenOption
-import kotlin.io.path.inputStream
 
 object InterfaceInjectionMinecraftTransformer {
     fun transform(
@@ -20,65 +15,61 @@ object InterfaceInjectionMinecraftTransformer {
         logger: Logger
     ): Boolean {
         if (injections.isNotEmpty()) {
-            Files.copy(baseMinecraft, output, StandardCopyOption.REPLACE_EXISTING)
-            output.openZipFileSystem(mapOf("mutable" to true)).use { fs ->
-                logger.debug("Transforming $output with ${injections.values.sumOf { it.size }} interface injections")
-
-                for (target in injections.keys) {
-                    try {
-                        val targetClass = "/" + target.replace(".", "/") + ".class"
-                        val targetPath = fs.getPath(targetClass)
-                        logger.debug("Transforming $targetPath")
-                        if (Files.exists(targetPath)) {
-                            val reader = ClassReader(targetPath.inputStream())
-                            val writer = ClassWriter(0)
-
-                            val node = ClassNode(Opcodes.ASM9)
-                            reader.accept(node, 0)
+            logger.debug("Transforming $output with ${injections.values.sumOf { it.size }} interface injections")
+            baseMinecraft.transformClasses(output, listOf(classTransform(injections, logger)))
+            return true
+        }
 
-                            if (node.interfaces == null) {
-                                node.interfaces = arrayListOf()
-                            }
+        return false
+    }
 
-                            for (injected in injections[target]!!) {
-                                if (!node.interfaces.contains(injected)) node.interfaces.add(injected)
-                            }
+    /**
+     * the injections as a [ClassTransform], keyed by target class.
+     */
+    fun classTransform(injections: Map<String, List<String>>, logger: Logger): ClassTransform {
+        val byClass = injections.mapKeys { it.key.replace(".", "/") }
+        return ClassTransform(
+            byClass.keys,
+            { className, next -> InjectingClassVisitor(next, byClass.getValue(className)) },
+            { targets ->
+                for (target in targets) {
+                    logger.warn("Could not find class /$target.class")
+                }
+            },
+            { target, e ->
+                logger.warn("An error occurred while transforming $target with interface injection", e)
+            }
+        )
+    }
 
-                            if (node.signature != null) {
-                                val resultingSignature = StringBuilder(node.signature)
+    class InjectingClassVisitor(next: ClassVisitor, private val injected: List<String>): ClassVisitor(Opcodes.ASM9, next) {
 
-                                for (injected in injections[target]!!) {
-                                    val computedSignature = "L" + injected.replace(".", "/") + ";"
+        override fun visit(
+            version: Int,
+            access: Int,
+            name: String,
+            signature: String?,
+            superName: String?,
+            interfaces: Array<out String>?
+        ) {
+            val resultingInterfaces = interfaces?.toMutableList() ?: mutableListOf()
+            for (injected in injected) {
+                if (!resultingInterfaces.contains(injected)) resultingInterfaces.add(injected)
+            }
 
-                                    if (!resultingSignature.contains(computedSignature)) resultingSignature.append(computedSignature)
-                                }
+            val resultingSignature = if (signature != null) {
+                val resultingSignature = StringBuilder(signature)
 
-                                node.signature = resultingSignature.toString()
-                            }
+                for (injected in injected) {
+                    val computedSignature = "L" + injected.replace(".", "/") + ";"
 
-                            node.accept(writer);
-                            Files.write(
-                                targetPath,
-                                writer.toByteArray(),
-                                StandardOpenOption.CREATE,
-                                StandardOpenOption.TRUNCATE_EXISTING
-                            )
-                        } else {
-                            logger.warn("Could not find class $targetClass in $output")
-                        }
-                    } catch (e: Exception) {
-                        logger.warn(
-                            "An error occurred while transforming $target with interface injection in $output",
-                            e
-                        )
-                    }
+                    if (!resultingSignature.contains(computedSignature)) resultingSignature.append(computedSignature)
                 }
-            }
 
+                resultingSignature.toString()
+            } else null
 
-            return true
+            super.visit(version, access, name, resultingSignature, superName, resultingInterfaces.toTypedArray())
         }
-
-        return false
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package xyz.wagyourtail.unimined.internal.minecraft
 
+import net.fabricmc.tinyremapper.IMappingProvider
 import net.fabricmc.tinyremapper.NonClassCopyMode
 import net.fabricmc.tinyremapper.OutputConsumerPath
 import net.fabricmc.tinyremapper.OutputConsumerPath.ResourceRemapper
@@ -11,6 +12,7 @@ import xyz.wagyourtail.unimined.api.minecraft.EnvType
 import xyz.wagyourtail.unimined.api.minecraft.remap.MinecraftRemapConfig
 import xyz.wagyourtail.unimined.api.unimined
 import xyz.wagyourtail.unimined.api.minecraft.MinecraftJar
+import xyz.wagyourtail.unimined.internal.mapping.RemapClasspathService
 import xyz.wagyourtail.unimined.util.FinalizeOnRead
 import xyz.wagyourtail.unimined.util.consumerApply
 import xyz.wagyourtail.unimined.util.getField
@@ -92,6 +94,15 @@ class MinecraftRemapper(val project: Project, val provider: MinecraftProvider):
             }
             val last = path.last()
             project.logger.lifecycle("[Unimined/McRemapper] Remapping minecraft $envType to $remapTo")
+            if (path.size > 1) {
+                val composed = provider.mappings.getComposedTRMappings(listOf(mappingNamespace) + path, true)
+                if (composed != null) {
+                    project.logger.info("[Unimined/McRemapper] $mappingNamespace -> ${path.joinToString(" -> ")}")
+                    remapToInternal(minecraft.path, target.path, envType, composed)
+                    project.logger.info("[Unimined/McRemapper]    ${target.path}")
+                    return@consumerApply target
+                }
+            }
             var prevTarget = minecraft.path
             var prevNamespace = minecraft.mappingNamespace
             for (step in path) {
@@ -116,13 +127,12 @@ class MinecraftRemapper(val project: Project, val provider: MinecraftProvider):
     }
 
     fun remapToInternal(from: Path, target: Path, envType: EnvType, fromNs: MappingNamespaceTree.Namespace, toNs: MappingNamespaceTree.Namespace) {
+        remapToInternal(from, target, envType, provider.mappings.getTRMappings(fromNs to toNs, true))
+    }
+
+    fun remapToInternal(from: Path, target: Path, envType: EnvType, mappings: (IMappingProvider.MappingAcceptor) -> Unit) {
         val remapperB = TinyRemapper.newRemapper()
-            .withMappings(
-                provider.mappings.getTRMappings(
-                    fromNs to toNs,
-                    true
-                )
-            )
+            .withMappings(mappings)
             .threads(Runtime.getRuntime().availableProcessors())
             .renameInvalidLocals(true)
             .rebuildSourceFilenames(true)
@@ -138,7 +148,8 @@ class MinecraftRemapper(val project: Project, val provider: MinecraftProvider):
         }
         tinyRemapperConf(remapperB)
         val remapper = remapperB.build()
-        remapper.readClassPathAsync(*provider.minecraftLibraries.files.map { it.toPath() }.toTypedArray())
+        val libraries = provider.minecraftLibraries.files.map { it.toPath() }
+        remapper.readClassPathAsync(*RemapClasspathService.get(project).classpath(libraries, libraries))
         try {
             remapper.readInputsAsync(from)
             OutputConsumerPath.Builder(target).build().use {
@@ -2,6 +2,7 @@ package xyz.wagyourtail.unimined.internal.minecraft.patch
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream
+import org.apache.commons.compress.archivers.zip.ZipFile
 import org.gradle.api.Project
 import org.gradle.api.file.FileCollection
 import org.gradle.api.tasks.SourceSet
@@ -27,6 +28,8 @@ import java.nio.file.FileSystem
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.StandardCopyOption
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
 import kotlin.io.path.*
 
 abstract class AbstractMinecraftTransformer protected constructor(
@@ -47,6 +50,11 @@ abstract class AbstractMinecraftTransformer protected constructor(
 
     override var unprotectRuntime by FinalizeOnRead(false)
 
+    override var mergeWindow: Int by FinalizeOnRead(
+        project.properties["unimined.mergeWindow"]?.toString()?.toIntOrNull()
+            ?: (Runtime.getRuntime().availableProcessors() * 4)
+    )
+
     override var canCombine: Boolean by FinalizeOnRead(LazyMutable {
         provider.minecraftData.mcVersionCompare(provider.version, "1.3") > -1
     })
@@ -78,71 +86,89 @@ abstract class AbstractMinecraftTransformer protected constructor(
         try {
             val written = mutableSetOf<String>()
             merged.path.deleteIfExists()
-            ZipArchiveOutputStream(merged.path.outputStream()).use { zipOutput ->
-                val clientClassEntries = mutableMapOf<String, ClassNode>()
-                clientjar.path.forEachInZip { path, stream ->
-                    if (path.startsWith("META-INF/")) return@forEachInZip
-                    if (path.endsWith(".class")) {
-                        if (shouldStripClass(path)) return@forEachInZip
-                        // add entry
-                        val classReader = ClassReader(stream)
-                        val classNode = ClassNode()
-                        classReader.accept(classNode, 0)
-                        clientClassEntries[path] = classNode
-                    } else {
-                        // copy directly
-                        written.add(path)
-                        zipOutput.putArchiveEntry(ZipArchiveEntry(path))
-                        stream.copyTo(zipOutput)
-                        zipOutput.closeArchiveEntry()
-                    }
-                }
-                val serverClassEntries = mutableMapOf<String, ClassNode>()
-                serverjar.path.forEachInZip { path, stream ->
-                    if (path.startsWith("META-INF/")) return@forEachInZip
-                    if (path.endsWith(".class")) {
-                        if (shouldStripClass(path)) return@forEachInZip
-                        // add entry
-                        val classReader = ClassReader(stream)
-                        val classNode = ClassNode()
-                        classReader.accept(classNode, 0)
-                        serverClassEntries[path] = classNode
-                    } else {
-                        // copy directly
-                        if (written.add(path)) {
-                            zipOutput.putArchiveEntry(ZipArchiveEntry(path))
-                            stream.copyTo(zipOutput)
+            openMergeInput(clientjar.path).use { clientZip ->
+                openMergeInput(serverjar.path).use { serverZip ->
+                    ZipArchiveOutputStream(merged.path.outputStream()).use { zipOutput ->
+                        // resources are copied directly, classes are only indexed and read once they're merged
+                        val clientClassEntries = LinkedHashMap<String, ZipArchiveEntry>()
+                        for (entry in clientZip.entries) {
+                            if (entry.isDirectory) continue
+                            val path = entry.name
+                            if (path.startsWith("META-INF/")) continue
+                            if (path.endsWith(".class")) {
+                                if (shouldStripClass(path)) continue
+                                clientClassEntries[path] = entry
+                            } else {
+                                // copy directly
+                                written.add(path)
+                                zipOutput.putArchiveEntry(ZipArchiveEntry(path))
+                                clientZip.getInputStream(entry).use { it.copyTo(zipOutput) }
+                                zipOutput.closeArchiveEntry()
+                            }
+                        }
+                        val serverClassEntries = LinkedHashMap<String, ZipArchiveEntry>()
+                        for (entry in serverZip.entries) {
+                            if (entry.isDirectory) continue
+                            val path = entry.name
+                            if (path.startsWith("META-INF/")) continue
+                            if (path.endsWith(".class")) {
+                                if (shouldStripClass(path)) continue
+                                serverClassEntries[path] = entry
+                            } else {
+                                // copy directly
+                                if (written.add(path)) {
+                                    zipOutput.putArchiveEntry(ZipArchiveEntry(path))
+                                    serverZip.getInputStream(entry).use { it.copyTo(zipOutput) }
+                                    zipOutput.closeArchiveEntry()
+                                } else {
+                                    project.logger.info("[Unimined/MappingsProvider] Entry in server jar already exists in client jar: $path, skipping")
+                                }
+                            }
+                        }
+                        // merge classes, server classes that failed to merge are written again as server only
+                        val failed = mutableSetOf<String>()
+                        var identical = 0
+                        mergeInOrder(clientClassEntries.keys, { name ->
+                            val clientEntry = clientClassEntries.getValue(name)
+                            val serverEntry = serverClassEntries[name]
+                            val clientBytes = clientZip.getInputStream(clientEntry).use { it.readBytes() }
+                            val serverBytes = serverEntry?.let { entry -> serverZip.getInputStream(entry).use { it.readBytes() } }
+                            // the same class on both sides merges to itself, so copy it as is
+                            if (serverEntry != null && mayBeIdentical(clientEntry, serverEntry) && clientBytes.contentEquals(serverBytes!!)) {
+                                identical++
+                                return@mergeInOrder { MergedClass(name, clientBytes) }
+                            }
+                            ({
+                                val node = readClassNode(clientBytes)
+                                val serverNode = serverBytes?.let { readClassNode(it) }
+                                try {
+                                    MergedClass(name, writeClassNode(merger.accept(node, serverNode)))
+                                } catch (e: Exception) {
+                                    MergedClass(name, null, node, serverNode, e)
+                                }
+                            })
+                        }) { result ->
+                            if (result.exception != null) {
+                                failed.add(result.name)
+                                onMergeFail(result.client!!, result.server!!, zipOutput, result.exception)
+                            } else {
+                                zipOutput.putArchiveEntry(ZipArchiveEntry(result.name))
+                                zipOutput.write(result.bytes!!)
+                                zipOutput.closeArchiveEntry()
+                            }
+                        }
+                        project.logger.info("[Unimined/MinecraftTransformer] $identical of ${clientClassEntries.size} client classes were identical on the server and copied without merging")
+                        val serverOnly = serverClassEntries.keys.filter { it !in clientClassEntries || it in failed }
+                        mergeInOrder(serverOnly, { name ->
+                            val serverBytes = serverZip.getInputStream(serverClassEntries.getValue(name)).use { it.readBytes() }
+                            ({ MergedClass(name, writeClassNode(merger.accept(null, readClassNode(serverBytes)))) })
+                        }) { result ->
+                            zipOutput.putArchiveEntry(ZipArchiveEntry(result.name))
+                            zipOutput.write(result.bytes!!)
                             zipOutput.closeArchiveEntry()
-                        } else {
-                            project.logger.info("[Unimined/MappingsProvider] Entry in server jar already exists in client jar: $path, skipping")
-                            return@forEachInZip
                         }
                     }
                 }
-                // merge classes
-                for ((name, node) in clientClassEntries) {
-                    val classWriter = ClassWriter(0)
-                    val serverNode = serverClassEntries[name]
-                    val out = try {
-                        merger.accept(node, serverNode)
-                    } catch (e: Exception) {
-                        onMergeFail(node, serverNode!!, zipOutput, e)
-                        continue
-                    }
-                    out.accept(classWriter)
-                    zipOutput.putArchiveEntry(ZipArchiveEntry(name))
-                    zipOutput.write(classWriter.toByteArray())
-                    zipOutput.closeArchiveEntry()
-                    serverClassEntries.remove(name)
-                }
-                for ((name, node) in serverClassEntries) {
-                    val classWriter = ClassWriter(0)
-                    val out = merger.accept(null, node)
-                    out.accept(classWriter)
-                    zipOutput.putArchiveEntry(ZipArchiveEntry(name))
-                    zipOutput.write(classWriter.toByteArray())
-                    zipOutput.closeArchiveEntry()
-                }
             }
         } catch (e: Exception) {
             merged.path.deleteIfExists()
@@ -151,6 +177,68 @@ abstract class AbstractMinecraftTransformer protected constructor(
         return merged
     }
 
+    /**
+     * the result of merging a single class, [bytes] is null if the merge failed with [exception].
+     */
+    private class MergedClass(
+        val name: String,
+        val bytes: ByteArray?,
+        val client: ClassNode? = null,
+        val server: ClassNode? = null,
+        val exception: Exception? = null
+    )
+
+    private fun openMergeInput(jar: Path): ZipFile =
+        ZipFile.builder().setIgnoreLocalFileHeader(true).setSeekableByteChannel(Files.newByteChannel(jar)).get()
+
+    /**
+     * compares the sizes and crcs from the central directories, -1 is unknown.
+     */
+    private fun mayBeIdentical(client: ZipArchiveEntry, server: ZipArchiveEntry): Boolean {
+        if (client.size != -1L && server.size != -1L && client.size != server.size) return false
+        if (client.crc != -1L && server.crc != -1L && client.crc != server.crc) return false
+        return true
+    }
+
+    private fun readClassNode(bytes: ByteArray): ClassNode {
+        val classNode = ClassNode()
+        ClassReader(bytes).accept(classNode, 0)
+        return classNode
+    }
+
+    private fun writeClassNode(node: ClassNode): ByteArray {
+        val classWriter = ClassWriter(0)
+        node.accept(classWriter)
+        return classWriter.toByteArray()
+    }
+
+    /**
+     * reads each of [names] on the calling thread, runs the returned work on the common pool, and hands the results
+     * to [write] on the calling thread in the same order as [names].
+     * at most [mergeWindow] classes are held in memory at once.
+     */
+    private fun mergeInOrder(
+        names: Collection<String>,
+        read: (String) -> () -> MergedClass,
+        write: (MergedClass) -> Unit
+    ) {
+        val inFlight = ArrayDeque<CompletableFuture<MergedClass>>()
+        fun writeNext() {
+            val result = try {
+                inFlight.removeFirst().join()
+            } catch (e: CompletionException) {
+                throw e.cause ?: e
+            }
+            write(result)
+        }
+        for (name in names) {
+            if (inFlight.size >= mergeWindow.coerceAtLeast(1)) writeNext()
+            val work = read(name)
+            inFlight.addLast(CompletableFuture.supplyAsync { work() })
+        }
+        while (inFlight.isNotEmpty()) writeNext()
+    }
+
     protected open val transform = listOf<(FileSystem) -> Unit>(
         FixParamAnnotations::apply
     )
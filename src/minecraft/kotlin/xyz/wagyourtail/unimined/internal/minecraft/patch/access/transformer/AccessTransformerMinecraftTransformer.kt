@@ -10,6 +10,7 @@ import xyz.wagyourtail.unimined.api.minecraft.patch.ataw.AccessConvert
 import xyz.wagyourtail.unimined.api.minecraft.patch.ataw.AccessTransformerPatcher
 import xyz.wagyourtail.unimined.api.unimined
 import xyz.wagyourtail.unimined.internal.mapping.at.AccessTransformerApplier
+import xyz.wagyourtail.unimined.internal.mapping.at.AccessTransformerSet
 import xyz.wagyourtail.unimined.internal.minecraft.MinecraftProvider
 import xyz.wagyourtail.unimined.internal.minecraft.patch.AbstractMinecraftTransformer
 import xyz.wagyourtail.unimined.api.minecraft.MinecraftJar
@@ -17,6 +18,7 @@ import xyz.wagyourtail.unimined.internal.minecraft.patch.access.AccessConvertImp
 import xyz.wagyourtail.unimined.util.FinalizeOnRead
 import xyz.wagyourtail.unimined.util.getShortSha1
 import xyz.wagyourtail.unimined.util.openZipFileSystem
+import xyz.wagyourtail.unimined.util.transformClasses
 import java.io.File
 import java.nio.charset.StandardCharsets
 import java.nio.file.Path
@@ -41,6 +43,8 @@ open class AccessTransformerMinecraftTransformer(
 
     override var atMainClass: String by FinalizeOnRead(if (provider.minecraftData.metadata.javaVersion >= JavaVersion.VERSION_21) "net.neoforged.accesstransformer.cli.TransformerProcessor" else "net.neoforged.accesstransformer.TransformerProcessor")
 
+    override var inProcessAccessTransformers: Boolean by FinalizeOnRead(project.properties["unimined.forkAccessTransformers"] != "true")
+
     override fun afterRemap(baseMinecraft: MinecraftJar): MinecraftJar {
         baseMinecraft.path.openZipFileSystem().use { fs ->
             val paths = mutableListOf<Path>()
@@ -108,6 +112,16 @@ open class AccessTransformerMinecraftTransformer(
                 }
             }
         }
+        if (inProcessAccessTransformers) {
+            try {
+                AccessTransformerSet.read(temp).classTransform(project.logger).let {
+                    baseMinecraft.transformClasses(output, listOf(it))
+                }
+            } finally {
+                temp.deleteIfExists()
+            }
+            return
+        }
         try {
             project.javaexec { spec ->
                 val toolchain = project.extensions.getByType(JavaToolchainService::class.java)
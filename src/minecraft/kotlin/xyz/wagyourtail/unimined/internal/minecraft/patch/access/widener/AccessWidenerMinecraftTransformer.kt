@@ -1,6 +1,7 @@
 package xyz.wagyourtail.unimined.internal.minecraft.patch.access.widener
 
 import org.gradle.api.Project
+import org.jetbrains.annotations.ApiStatus
 import xyz.wagyourtail.unimined.api.minecraft.patch.ataw.AccessConvert
 import xyz.wagyourtail.unimined.api.minecraft.patch.ataw.AccessWidenerPatcher
 import xyz.wagyourtail.unimined.api.unimined
@@ -9,8 +10,10 @@ import xyz.wagyourtail.unimined.internal.minecraft.MinecraftProvider
 import xyz.wagyourtail.unimined.internal.minecraft.patch.AbstractMinecraftTransformer
 import xyz.wagyourtail.unimined.api.minecraft.MinecraftJar
 import xyz.wagyourtail.unimined.internal.minecraft.patch.access.AccessConvertImpl
+import xyz.wagyourtail.unimined.util.ClassTransform
 import xyz.wagyourtail.unimined.util.FinalizeOnRead
 import xyz.wagyourtail.unimined.util.getShortSha1
+import xyz.wagyourtail.unimined.util.transformClasses
 import java.io.File
 import kotlin.io.path.exists
 
@@ -33,29 +36,32 @@ open class AccessWidenerMinecraftTransformer(
     }
 
     private fun applyAW(baseMinecraft: MinecraftJar): MinecraftJar {
-        return if (accessWidener != null) {
-            val output = MinecraftJar(
-                baseMinecraft,
-                awOrAt = "aw+${accessWidener!!.toPath().getShortSha1()}"
-            )
-            if (!output.path.exists() || project.unimined.forceReload) {
-                if (AccessWidenerApplier.transform(
-                        accessWidener!!.toPath(),
-                        if (baseMinecraft.mappingNamespace.named) "named" else baseMinecraft.mappingNamespace.name,
-                        baseMinecraft.path,
-                        output.path,
-                        false,
-                        project.logger
-                    )
-                ) {
-                    output
-                } else {
-                    baseMinecraft
-                }
-            } else {
-                output
-            }
-        } else baseMinecraft
+        val (output, transform) = accessWidenerTransform(baseMinecraft) ?: return baseMinecraft
+        if (!output.path.exists() || project.unimined.forceReload) {
+            project.logger.debug("Transforming ${output.path} with access widener $accessWidener")
+            baseMinecraft.path.transformClasses(output.path, listOf(transform))
+        }
+        return output
+    }
+
+    /**
+     * the jar [afterRemap] produces and the transform that produces it,
+     * or null if there's no access widener to apply to [baseMinecraft].
+     */
+    @ApiStatus.Internal
+    fun accessWidenerTransform(baseMinecraft: MinecraftJar): Pair<MinecraftJar, ClassTransform>? {
+        val accessWidener = accessWidener ?: return null
+        val transform = AccessWidenerApplier.classTransform(
+            accessWidener.toPath(),
+            if (baseMinecraft.mappingNamespace.named) "named" else baseMinecraft.mappingNamespace.name,
+            false,
+            project.logger
+        ) ?: return null
+        val output = MinecraftJar(
+            baseMinecraft,
+            awOrAt = "aw+${accessWidener.toPath().getShortSha1()}"
+        )
+        return output to transform
     }
 
 }
\ No newline at end of file
@@ -237,34 +237,35 @@ abstract class FabricLikeMinecraftTransformer(
         }
     }
 
-    override fun afterRemap(baseMinecraft: MinecraftJar): MinecraftJar = applyInterfaceInjection(accessWidenerTransformer.afterRemap(baseMinecraft))
-
-    private fun applyInterfaceInjection(baseMinecraft: MinecraftJar): MinecraftJar {
+    override fun afterRemap(baseMinecraft: MinecraftJar): MinecraftJar {
         val injections = hashMapOf<String, List<String>>()
 
         this.collectInterfaceInjections(baseMinecraft, injections)
 
-        return if (injections.isNotEmpty()) {
-            val oldSuffix = if (baseMinecraft.awOrAt != null) baseMinecraft.awOrAt + "+" else ""
+        if (injections.isEmpty()) return accessWidenerTransformer.afterRemap(baseMinecraft)
 
-            val output = MinecraftJar(
-                baseMinecraft,
-                parentPath = provider.localCache.resolve("fabric").createDirectories(),
-                awOrAt = "${oldSuffix}ii+${injections.getShortSha1()}"
-            )
+        // widen and inject in the same pass, the access widened jar on its own is never needed
+        val accessWidener = accessWidenerTransformer.accessWidenerTransform(baseMinecraft)
+        val widened = accessWidener?.first ?: baseMinecraft
+        val oldSuffix = if (widened.awOrAt != null) widened.awOrAt + "+" else ""
+
+        val output = MinecraftJar(
+            widened,
+            parentPath = provider.localCache.resolve("fabric").createDirectories(),
+            awOrAt = "${oldSuffix}ii+${injections.getShortSha1()}"
+        )
 
-            if (!output.path.exists() || project.unimined.forceReload) {
-                if (InterfaceInjectionMinecraftTransformer.transform(
-                        injections,
-                        baseMinecraft.path,
-                        output.path,
-                        project.logger
-                    )
-                ) {
-                    output
-                } else baseMinecraft
-            } else output
-        } else baseMinecraft
+        if (!output.path.exists() || project.unimined.forceReload) {
+            project.logger.debug("Transforming ${output.path} with ${injections.values.sumOf { it.size }} interface injections")
+            baseMinecraft.path.transformClasses(
+                output.path,
+                listOfNotNull(
+                    accessWidener?.second,
+                    InterfaceInjectionMinecraftTransformer.classTransform(injections, project.logger)
+                )
+            )
+        }
+        return output
     }
 
     abstract fun collectInterfaceInjections(baseMinecraft: MinecraftJar, injections: HashMap<String, List<String>>)
@@ -68,6 +68,12 @@ abstract class ForgeLikeMinecraftTransformer(
             forgeTransformer.onMergeFail = value
         }
 
+    override var mergeWindow: Int
+        get() = forgeTransformer.mergeWindow
+        set(value) {
+            forgeTransformer.mergeWindow = value
+        }
+
     override var unprotectRuntime: Boolean
         get() = forgeTransformer.unprotectRuntime
         set(value) {
@@ -270,6 +276,8 @@ abstract class ForgeLikeMinecraftTransformer(
     abstract fun parseVersionJson(json: JsonObject)
 
     override fun merge(clientjar: MinecraftJar, serverjar: MinecraftJar): MinecraftJar {
+        // resolve the forge jar on this thread, the merger runs on the common pool
+        actualSideMarker
         return forgeTransformer.merge(clientjar, serverjar)
     }
 
@@ -48,6 +48,12 @@ class MergedMinecraftTransformer(project: Project, provider: MinecraftProvider):
             patchers.first().onMergeFail = value
         }
 
+    override var mergeWindow: Int
+        get() = patchers.first().mergeWindow
+        set(value) {
+            patchers.first().mergeWindow = value
+        }
+
     override var canCombine: Boolean
         get() = patchers.first().canCombine
         set(value) {
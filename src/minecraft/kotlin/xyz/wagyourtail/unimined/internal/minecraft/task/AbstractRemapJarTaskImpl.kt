@@ -1,5 +1,6 @@
 package xyz.wagyourtail.unimined.internal.minecraft.task
 
+import net.fabricmc.tinyremapper.IMappingProvider
 import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.TaskAction
 import xyz.wagyourtail.unimined.api.mapping.MappingNamespaceTree
@@ -70,11 +71,17 @@ abstract class AbstractRemapJarTaskImpl @Inject constructor(@get:Internal val pr
         project.logger.lifecycle("[Unimined/RemapJar ${this.path}] remapping output ${inputFile.name} from $devNs/$devFNs to $prodNs")
         project.logger.info("[Unimined/RemapJar ${this.path}]    $devNs -> ${path.joinToString(" -> ") { it.name }}")
 
+        // remap straight to the last namespace in a single pass if the path composes
+        val composed = if (path.size > 1 && canComposeRemapPath()) {
+            provider.mappings.getComposedTRMappings(listOf(devNs) + path)
+        } else null
+        val steps = if (composed != null) listOf(path.last()) else path
+
         var prevTarget = inputFile
         var prevNamespace = devNs
         var prevPrevNamespace = devFNs
-        for (i in path.indices) {
-            val step = path[i]
+        for (i in steps.indices) {
+            val step = steps[i]
             project.logger.info("[Unimined/RemapJar ${this.path}]    $step")
             val nextTarget = temporaryDir.toPath().resolve("${inputFile.nameWithoutExtension}-temp-${step.name}.jar")
             nextTarget.deleteIfExists()
@@ -94,7 +101,7 @@ abstract class AbstractRemapJarTaskImpl @Inject constructor(@get:Internal val pr
                 project.logger.debug("[Unimined/RemapJar ${path}]    $it")
             }
 
-            doRemap(prevTarget, nextTarget, prevNamespace, step, (classpath + listOf(mc)).toTypedArray())
+            doRemap(prevTarget, nextTarget, prevNamespace, step, (classpath + listOf(mc)).toTypedArray(), composed)
 
             prevTarget = nextTarget
             prevPrevNamespace = prevNamespace
@@ -112,11 +119,20 @@ abstract class AbstractRemapJarTaskImpl @Inject constructor(@get:Internal val pr
         copy()
     }
 
+    /**
+     * whether [doRemap] can take mappings for a whole remap path at once.
+     */
+    protected open fun canComposeRemapPath(): Boolean = false
+
+    /**
+     * @param mappings mappings composed along the remap path, if null [fromNs] and [toNs] are adjacent in the path
+     */
     protected abstract fun doRemap(
         from: Path,
         target: Path,
         fromNs: MappingNamespaceTree.Namespace,
         toNs: MappingNamespaceTree.Namespace,
-        classpathList: Array<Path>
+        classpathList: Array<Path>,
+        mappings: ((IMappingProvider.MappingAcceptor) -> Unit)?
     )
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package xyz.wagyourtail.unimined.internal.minecraft.task
 
 import net.fabricmc.loom.util.kotlin.KotlinClasspathService
 import net.fabricmc.loom.util.kotlin.KotlinRemapperClassloader
+import net.fabricmc.tinyremapper.IMappingProvider
 import net.fabricmc.tinyremapper.OutputConsumerPath
 import net.fabricmc.tinyremapper.TinyRemapper
 import org.gradle.api.tasks.Internal
@@ -10,6 +11,7 @@ import xyz.wagyourtail.unimined.api.mapping.mixin.MixinRemapOptions
 import xyz.wagyourtail.unimined.api.minecraft.MinecraftConfig
 import xyz.wagyourtail.unimined.api.minecraft.patch.forge.ForgeLikePatcher
 import xyz.wagyourtail.unimined.api.minecraft.task.RemapJarTask
+import xyz.wagyourtail.unimined.internal.mapping.RemapClasspathService
 import xyz.wagyourtail.unimined.internal.mapping.at.AccessTransformerApplier
 import xyz.wagyourtail.unimined.internal.mapping.aw.AccessWidenerApplier
 import xyz.wagyourtail.unimined.internal.mapping.extension.MixinRemapExtension
@@ -42,18 +44,21 @@ abstract class RemapJarTaskImpl @Inject constructor(provider: MinecraftConfig):
         remapATToLegacy.convention(null as Boolean?).finalizeValueOnRead()
     }
 
+    override fun canComposeRemapPath() = true
+
     @Suppress("UNNECESSARY_NOT_NULL_ASSERTION")
     override fun doRemap(
         from: Path,
         target: Path,
         fromNs: MappingNamespaceTree.Namespace,
         toNs: MappingNamespaceTree.Namespace,
-        classpathList: Array<Path>
+        classpathList: Array<Path>,
+        mappings: ((IMappingProvider.MappingAcceptor) -> Unit)?
     ) {
         project.logger.info("[Unimined/RemapJar ${path}] remapping $fromNs -> $toNs (start time: ${System.currentTimeMillis()})")
         val remapperB = TinyRemapper.newRemapper()
             .withMappings(
-                provider.mappings.getTRMappings(
+                mappings ?: provider.mappings.getTRMappings(
                     fromNs to toNs,
                     false
                 )
@@ -76,7 +81,11 @@ abstract class RemapJarTaskImpl @Inject constructor(provider: MinecraftConfig):
         val remapper = remapperB.build()
         val tag = remapper.createInputTag()
         project.logger.debug("[Unimined/RemapJar ${path}] input: $from")
-        betterMixinExtension.readClassPath(remapper, *classpathList).thenCompose {
+        val remapClasspath = RemapClasspathService.get(project).classpath(
+            classpathList.toList(),
+            provider.minecraftLibraries.files.map { it.toPath() }
+        )
+        betterMixinExtension.readClassPath(remapper, *remapClasspath).thenCompose {
             project.logger.info("[Unimined/RemapJar ${path}] reading input: $from (time: ${System.currentTimeMillis()})")
             betterMixinExtension.readInput(remapper, tag, from)
         }.thenRun {
@@ -1,5 +1,6 @@
 package xyz.wagyourtail.unimined.internal.minecraft.task
 
+import net.fabricmc.tinyremapper.IMappingProvider
 import org.gradle.api.tasks.Internal
 import xyz.wagyourtail.unimined.api.mapping.MappingNamespaceTree
 import xyz.wagyourtail.unimined.api.mapping.mixin.MixinRemapOptions
@@ -24,7 +25,8 @@ abstract class RemapSourcesJarTaskImpl @Inject constructor(provider: MinecraftCo
         target: Path,
         fromNs: MappingNamespaceTree.Namespace,
         toNs: MappingNamespaceTree.Namespace,
-        classpathList: Array<Path>
+        classpathList: Array<Path>,
+        mappings: ((IMappingProvider.MappingAcceptor) -> Unit)?
     ) {
         // source-remap seems to be broken when reading/writing from a jar, so copy them to/from temp dirs
         val output = temporaryDir.resolve(toNs.name).toPath().apply {
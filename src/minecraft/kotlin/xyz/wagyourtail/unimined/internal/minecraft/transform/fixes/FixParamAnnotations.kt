@@ -4,7 +4,9 @@ import net.fabricmc.tinyremapper.extension.mixin.common.data.Constant
 import org.objectweb.asm.*
 import java.nio.file.FileSystem
 import java.nio.file.Files
+import java.nio.file.Path
 import java.nio.file.StandardOpenOption
+import java.util.stream.IntStream
 import kotlin.io.path.name
 import kotlin.io.path.readBytes
 import kotlin.io.path.writeBytes
@@ -14,22 +16,56 @@ object FixParamAnnotations {
 
     class DontTransformException: Exception()
 
+    /**
+     * `ParameterAnnotations`, which is in the constant pool of any class with a parameter annotations attribute.
+     */
+    private val PARAMETER_ANNOTATIONS = "ParameterAnnotations".toByteArray()
+
     fun apply(fs: FileSystem) {
+        // only constructors with parameter annotations are ever changed, so only classes that have some are rewritten
+        val candidates = mutableListOf<Pair<Path, ByteArray>>()
         fs.rootDirectories.forEach { root ->
             Files.walk(root).use { s ->
                 for (path in s.filter { it.name.endsWith(".class") }) {
-                    val reader = ClassReader(path.readBytes())
-                    val writer = ClassWriter(reader, ClassWriter.COMPUTE_MAXS)
-                    val visitor = ParameterAnnotationVisitor(writer)
-                    try {
-                        reader.accept(visitor, ClassReader.EXPAND_FRAMES)
-                        path.writeBytes(writer.toByteArray(), StandardOpenOption.TRUNCATE_EXISTING)
-                    } catch (e: DontTransformException) {
-                        // do nothing
+                    val bytes = path.readBytes()
+                    if (bytes.contains(PARAMETER_ANNOTATIONS)) {
+                        candidates.add(path to bytes)
                     }
                 }
             }
         }
+        val fixed = arrayOfNulls<ByteArray>(candidates.size)
+        IntStream.range(0, candidates.size).parallel().forEach { i ->
+            fixed[i] = fix(candidates[i].second)
+        }
+        for ((i, candidate) in candidates.withIndex()) {
+            fixed[i]?.let { candidate.first.writeBytes(it, StandardOpenOption.TRUNCATE_EXISTING) }
+        }
+    }
+
+    /**
+     * @return the fixed class, or null if it doesn't need fixing
+     */
+    fun fix(bytes: ByteArray): ByteArray? {
+        val reader = ClassReader(bytes)
+        val writer = ClassWriter(reader, ClassWriter.COMPUTE_MAXS)
+        val visitor = ParameterAnnotationVisitor(writer)
+        return try {
+            reader.accept(visitor, ClassReader.EXPAND_FRAMES)
+            writer.toByteArray()
+        } catch (e: DontTransformException) {
+            null
+        }
+    }
+
+    private fun ByteArray.contains(sequence: ByteArray): Boolean {
+        outer@ for (i in 0..size - sequence.size) {
+            for (j in sequence.indices) {
+                if (this[i + j] != sequence[j]) continue@outer
+            }
+            return true
+        }
+        return false
     }
 
     class ParameterAnnotationVisitor(cv: ClassVisitor): ClassVisitor(Constant.ASM_VERSION, cv) {
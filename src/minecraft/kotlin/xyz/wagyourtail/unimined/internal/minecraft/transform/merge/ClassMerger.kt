@@ -52,49 +52,13 @@ class ClassMerger(
         merged.outerMethod = client.outerMethod
         merged.outerMethodDesc = client.outerMethodDesc
         // merge client and server annotations
-        merged.visibleAnnotations = client.visibleAnnotations?.toMutableList()?.apply {
-            for (a in server.visibleAnnotations ?: listOf()) {
-                if (!any { areAnnotationNodesEqual(it, a) }) {
-                    add(a)
-                }
-            }
-        } ?: server.visibleAnnotations
-        merged.invisibleAnnotations = client.invisibleAnnotations?.toMutableList()?.apply {
-            for (a in server.invisibleAnnotations ?: listOf()) {
-                if (!any { areAnnotationNodesEqual(it, a) }) {
-                    add(a)
-                }
-            }
-        } ?: server.invisibleAnnotations
-        merged.visibleTypeAnnotations = client.visibleTypeAnnotations?.toMutableList()?.apply {
-            for (a in server.visibleTypeAnnotations ?: listOf()) {
-                if (!any { areAnnotationNodesEqual(it, a) }) {
-                    add(a)
-                }
-            }
-        } ?: server.visibleTypeAnnotations
-        merged.invisibleTypeAnnotations = client.invisibleTypeAnnotations?.toMutableList()?.apply {
-            for (a in server.invisibleTypeAnnotations ?: listOf()) {
-                if (!any { areAnnotationNodesEqual(it, a) }) {
-                    add(a)
-                }
-            }
-        } ?: server.invisibleTypeAnnotations
-        merged.attrs = client.attrs?.toMutableList()?.apply {
-            for (a in server.attrs ?: listOf()) {
-                if (!any { areAttributesEqual(it, a) }) {
-                    add(a)
-                }
-            }
-        } ?: server.attrs
+        merged.visibleAnnotations = mergeDistinct(client.visibleAnnotations, server.visibleAnnotations) { annotationKey(it) }
+        merged.invisibleAnnotations = mergeDistinct(client.invisibleAnnotations, server.invisibleAnnotations) { annotationKey(it) }
+        merged.visibleTypeAnnotations = mergeDistinct(client.visibleTypeAnnotations, server.visibleTypeAnnotations) { annotationKey(it) }
+        merged.invisibleTypeAnnotations = mergeDistinct(client.invisibleTypeAnnotations, server.invisibleTypeAnnotations) { annotationKey(it) }
+        merged.attrs = mergeDistinct(client.attrs, server.attrs) { attributeKey(it) }
         // merge inner classes
-        merged.innerClasses = client.innerClasses?.toMutableList()?.apply {
-            for (a in server.innerClasses ?: listOf()) {
-                if (!any { areInnerClassNodesEqual(it, a) }) {
-                    add(a)
-                }
-            }
-        } ?: server.innerClasses
+        merged.innerClasses = mergeDistinct(client.innerClasses, server.innerClasses) { innerClassKey(it) }
         merged.nestHostClass = client.nestHostClass
         merged.nestMembers = client.nestMembers?.toMutableSet()
             ?.apply { addAll(server.nestMembers ?: setOf()) }
@@ -112,17 +76,8 @@ class ClassMerger(
         } ?: server.recordComponents
 
         // merge fields
-        val fields = client.fields.map { it to EnvType.CLIENT }.toMutableList()
-        outer@ for (field in server.fields) {
-            for (f in fields) {
-                if (areFieldNodesEqual(f.first, field)) {
-                    fields.remove(f)
-                    field.access = selectWeakerAccess(f.first.access, field.access)
-                    fields.add(field to EnvType.COMBINED)
-                    continue@outer
-                }
-            }
-            fields.add(field to EnvType.SERVER)
+        val fields = mergeMembers(client.fields, server.fields, { it.name to it.desc }, { a, b -> areFieldNodesEqual(a, b) }) { c, s ->
+            s.access = selectWeakerAccess(c.access, s.access)
         }
         fields.forEach { toMergedFields(it.first, it.second) }
         merged.fields = mutableListOf()
@@ -131,17 +86,8 @@ class ClassMerger(
         }
 
         // merge methods
-        val methods = client.methods.map { it to EnvType.CLIENT }.toMutableList()
-        outer@ for (method in server.methods) {
-            for (m in methods) {
-                if (areMethodNodesEqual(m.first, method)) {
-                    methods.remove(m)
-                    method.access = selectWeakerAccess(m.first.access, method.access)
-                    methods.add(method to EnvType.COMBINED)
-                    continue@outer
-                }
-            }
-            methods.add(method to EnvType.SERVER)
+        val methods = mergeMembers(client.methods, server.methods, { it.name to it.desc }, { a, b -> areMethodNodesEqual(a, b) }) { m, s ->
+            s.access = selectWeakerAccess(m.access, s.access)
         }
         methods.forEach { toMergedMethods(it.first, it.second) }
         merged.methods = mutableListOf()
@@ -152,88 +98,125 @@ class ClassMerger(
         return merged
     }
 
+    /**
+     * client members in order, except those matched by a server member, followed by every server member in order.
+     * members are matched by [key] first, so only members with the same name and descriptor are ever compared.
+     */
+    private inline fun <T> mergeMembers(
+        client: List<T>,
+        server: List<T>,
+        key: (T) -> Any,
+        equal: (T, T) -> Boolean,
+        combine: (T, T) -> Unit
+    ): List<Pair<T, EnvType>> {
+        val byKey = HashMap<Any, Int>(client.size * 2)
+        for ((i, member) in client.withIndex()) {
+            if (byKey.put(key(member), i) != null) return mergeMembersSlow(client, server, equal, combine)
+        }
+        val serverKeys = HashSet<Any>(server.size * 2)
+        for (member in server) {
+            if (!serverKeys.add(key(member))) return mergeMembersSlow(client, server, equal, combine)
+        }
+        val matched = BooleanArray(client.size)
+        val fromServer = ArrayList<Pair<T, EnvType>>(server.size)
+        for (member in server) {
+            val i = byKey[key(member)]
+            if (i != null && equal(client[i], member)) {
+                matched[i] = true
+                combine(client[i], member)
+                fromServer.add(member to EnvType.COMBINED)
+            } else {
+                fromServer.add(member to EnvType.SERVER)
+            }
+        }
+        val members = ArrayList<Pair<T, EnvType>>(client.size + server.size)
+        for ((i, member) in client.withIndex()) {
+            if (!matched[i]) members.add(member to EnvType.CLIENT)
+        }
+        members.addAll(fromServer)
+        return members
+    }
+
+    /**
+     * pairwise matching, for classes that declare a member twice.
+     */
+    private inline fun <T> mergeMembersSlow(
+        client: List<T>,
+        server: List<T>,
+        equal: (T, T) -> Boolean,
+        combine: (T, T) -> Unit
+    ): List<Pair<T, EnvType>> {
+        val members = client.map { it to EnvType.CLIENT }.toMutableList()
+        outer@ for (member in server) {
+            for (m in members) {
+                if (equal(m.first, member)) {
+                    members.remove(m)
+                    combine(m.first, member)
+                    members.add(member to EnvType.COMBINED)
+                    continue@outer
+                }
+            }
+            members.add(member to EnvType.SERVER)
+        }
+        return members
+    }
+
     companion object {
+        /**
+         * [client], plus each element of [server] that isn't already there by [key].
+         */
+        private fun <T> mergeDistinct(client: List<T>?, server: List<T>?, key: (T) -> Any?): List<T>? {
+            if (client == null) return server
+            val merged = client.toMutableList()
+            val seen = client.mapTo(HashSet(), key)
+            for (a in server ?: listOf()) {
+                if (seen.add(key(a))) {
+                    merged.add(a)
+                }
+            }
+            return merged
+        }
+
+        /**
+         * whether [a] and [b] hold the same elements by [key], ignoring order.
+         */
+        private fun <T> areMultisetsEqual(a: List<T>?, b: List<T>?, key: (T) -> Any?): Boolean {
+            if ((a?.size ?: 0) != (b?.size ?: 0)) return false
+            if (a.isNullOrEmpty()) return true
+            val counts = HashMap<Any?, Int>(a.size * 2)
+            for (e in a) counts.merge(key(e), 1) { x, y -> x + y }
+            for (e in b!!) {
+                val count = counts[key(e)] ?: return false
+                if (count == 1) counts.remove(key(e)) else counts[key(e)] = count - 1
+            }
+            return counts.isEmpty()
+        }
+
+        /**
+         * what [areAnnotationNodesEqual] compares.
+         */
+        fun annotationKey(a: AnnotationNode): Any? = a.desc
+
+        /**
+         * what [areAttributesEqual] compares.
+         */
+        fun attributeKey(a: Attribute): Any? = a.type
+
+        /**
+         * what [areInnerClassNodesEqual] compares.
+         */
+        fun innerClassKey(a: InnerClassNode): Any? = listOf(a.name, a.outerName, a.innerName, a.access)
         fun areFieldNodesEqual(a: FieldNode, b: FieldNode): Boolean {
             if (a.name != b.name) return false
             if (a.desc != b.desc) return false
             if (a.value != b.value) return false
             // check static part of access
             if (a.access and Opcodes.ACC_STATIC != b.access and Opcodes.ACC_STATIC) return false
-            val aVisibleAnnotations = a.visibleAnnotations?.toMutableList() ?: mutableListOf()
-            val bVisibleAnnotations = b.visibleAnnotations?.toMutableList() ?: mutableListOf()
-            if (aVisibleAnnotations.size != bVisibleAnnotations.size) return false
-            aVisibleAnnotations.removeIf {
-                bVisibleAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bVisibleAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aVisibleAnnotations.isNotEmpty()) return false
-            if (bVisibleAnnotations.isNotEmpty()) return false
-            val aInvisibleAnnotations = a.invisibleAnnotations?.toMutableList() ?: mutableListOf()
-            val bInvisibleAnnotations = b.invisibleAnnotations?.toMutableList() ?: mutableListOf()
-            if (aInvisibleAnnotations.size != bInvisibleAnnotations.size) return false
-            aInvisibleAnnotations.removeIf {
-                bInvisibleAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bInvisibleAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aInvisibleAnnotations.isNotEmpty()) return false
-            if (bInvisibleAnnotations.isNotEmpty()) return false
-            val aVisibleTypeAnnotations = a.visibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            val bVisibleTypeAnnotations = b.visibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            if (aVisibleTypeAnnotations.size != bVisibleTypeAnnotations.size) return false
-            aVisibleTypeAnnotations.removeIf {
-                bVisibleTypeAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bVisibleTypeAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aVisibleTypeAnnotations.isNotEmpty()) return false
-            if (bVisibleTypeAnnotations.isNotEmpty()) return false
-            val aInvisibleTypeAnnotations = a.invisibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            val bInvisibleTypeAnnotations = b.invisibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            if (aInvisibleTypeAnnotations.size != bInvisibleTypeAnnotations.size) return false
-            aInvisibleTypeAnnotations.removeIf {
-                bInvisibleTypeAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bInvisibleTypeAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aInvisibleTypeAnnotations.isNotEmpty()) return false
-            if (bInvisibleTypeAnnotations.isNotEmpty()) return false
-            val aAttributes = a.attrs?.toMutableList() ?: mutableListOf()
-            val bAttributes = b.attrs?.toMutableList() ?: mutableListOf()
-            if (aAttributes.size != bAttributes.size) return false
-            aAttributes.removeIf {
-                bAttributes.any { it2 ->
-                    if (areAttributesEqual(it, it2)) {
-                        bAttributes.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aAttributes.isNotEmpty()) return false
-            if (bAttributes.isNotEmpty()) return false
+            if (!areMultisetsEqual(a.visibleAnnotations, b.visibleAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.invisibleAnnotations, b.invisibleAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.visibleTypeAnnotations, b.visibleTypeAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.invisibleTypeAnnotations, b.invisibleTypeAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.attrs, b.attrs) { attributeKey(it) }) return false
             return true
         }
 
@@ -251,81 +234,11 @@ class ClassMerger(
 //                }
 //            }
 //            if (aParameters.isNotEmpty()) return false
-            val aVisibleAnnotations = a.visibleAnnotations?.toMutableList() ?: mutableListOf()
-            val bVisibleAnnotations = b.visibleAnnotations?.toMutableList() ?: mutableListOf()
-            if (aVisibleAnnotations.size != bVisibleAnnotations.size) return false
-            aVisibleAnnotations.removeIf {
-                bVisibleAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bVisibleAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aVisibleAnnotations.isNotEmpty()) return false
-            if (bVisibleAnnotations.isNotEmpty()) return false
-            val aInvisibleAnnotations = a.invisibleAnnotations?.toMutableList() ?: mutableListOf()
-            val bInvisibleAnnotations = b.invisibleAnnotations?.toMutableList() ?: mutableListOf()
-            if (aInvisibleAnnotations.size != bInvisibleAnnotations.size) return false
-            aInvisibleAnnotations.removeIf {
-                bInvisibleAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bInvisibleAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aInvisibleAnnotations.isNotEmpty()) return false
-            if (bInvisibleAnnotations.isNotEmpty()) return false
-            val aVisibleTypeAnnotations = a.visibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            val bVisibleTypeAnnotations = b.visibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            if (aVisibleTypeAnnotations.size != bVisibleTypeAnnotations.size) return false
-            aVisibleTypeAnnotations.removeIf {
-                bVisibleTypeAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bVisibleTypeAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aVisibleTypeAnnotations.isNotEmpty()) return false
-            if (bVisibleTypeAnnotations.isNotEmpty()) return false
-            val aInvisibleTypeAnnotations = a.invisibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            val bInvisibleTypeAnnotations = b.invisibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            if (aInvisibleTypeAnnotations.size != bInvisibleTypeAnnotations.size) return false
-            aInvisibleTypeAnnotations.removeIf {
-                bInvisibleTypeAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bInvisibleTypeAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aInvisibleTypeAnnotations.isNotEmpty()) return false
-            if (bInvisibleTypeAnnotations.isNotEmpty()) return false
-            val aAttributes = a.attrs?.toMutableList() ?: mutableListOf()
-            val bAttributes = b.attrs?.toMutableList() ?: mutableListOf()
-            if (aAttributes.size != bAttributes.size) return false
-            aAttributes.removeIf {
-                bAttributes.any { it2 ->
-                    if (areAttributesEqual(it, it2)) {
-                        bAttributes.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aAttributes.isNotEmpty()) return false
-            if (bAttributes.isNotEmpty()) return false
+            if (!areMultisetsEqual(a.visibleAnnotations, b.visibleAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.invisibleAnnotations, b.invisibleAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.visibleTypeAnnotations, b.visibleTypeAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.invisibleTypeAnnotations, b.invisibleTypeAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.attrs, b.attrs) { attributeKey(it) }) return false
 
             // check content
             if (a.instructions.size() != b.instructions.size()) return false
@@ -400,81 +313,11 @@ class ClassMerger(
         fun areRecordComponentNodesEqual(a: RecordComponentNode, b: RecordComponentNode): Boolean {
             if (a.name != b.name) return false
             if (a.descriptor != b.descriptor) return false
-            val aVisibleAnnotations = a.visibleAnnotations?.toMutableList() ?: mutableListOf()
-            val bVisibleAnnotations = b.visibleAnnotations?.toMutableList() ?: mutableListOf()
-            if (aVisibleAnnotations.size != bVisibleAnnotations.size) return false
-            aVisibleAnnotations.removeIf {
-                bVisibleAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bVisibleAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aVisibleAnnotations.isNotEmpty()) return false
-            if (bVisibleAnnotations.isNotEmpty()) return false
-            val aInvisibleAnnotations = a.invisibleAnnotations?.toMutableList() ?: mutableListOf()
-            val bInvisibleAnnotations = b.invisibleAnnotations?.toMutableList() ?: mutableListOf()
-            if (aInvisibleAnnotations.size != bInvisibleAnnotations.size) return false
-            aInvisibleAnnotations.removeIf {
-                bInvisibleAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bInvisibleAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aInvisibleAnnotations.isNotEmpty()) return false
-            if (bInvisibleAnnotations.isNotEmpty()) return false
-            val aVisibleTypeAnnotations = a.visibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            val bVisibleTypeAnnotations = b.visibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            if (aVisibleTypeAnnotations.size != bVisibleTypeAnnotations.size) return false
-            aVisibleTypeAnnotations.removeIf {
-                bVisibleTypeAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bVisibleTypeAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aVisibleTypeAnnotations.isNotEmpty()) return false
-            if (bVisibleTypeAnnotations.isNotEmpty()) return false
-            val aInvisibleTypeAnnotations = a.invisibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            val bInvisibleTypeAnnotations = b.invisibleTypeAnnotations?.toMutableList() ?: mutableListOf()
-            if (aInvisibleTypeAnnotations.size != bInvisibleTypeAnnotations.size) return false
-            aInvisibleTypeAnnotations.removeIf {
-                bInvisibleTypeAnnotations.any { it2 ->
-                    if (areAnnotationNodesEqual(it, it2)) {
-                        bInvisibleTypeAnnotations.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aInvisibleTypeAnnotations.isNotEmpty()) return false
-            if (bInvisibleTypeAnnotations.isNotEmpty()) return false
-            val aAttributes = a.attrs?.toMutableList() ?: mutableListOf()
-            val bAttributes = b.attrs?.toMutableList() ?: mutableListOf()
-            if (aAttributes.size != bAttributes.size) return false
-            aAttributes.removeIf {
-                bAttributes.any { it2 ->
-                    if (areAttributesEqual(it, it2)) {
-                        bAttributes.remove(it2)
-                        true
-                    } else {
-                        false
-                    }
-                }
-            }
-            if (aAttributes.isNotEmpty()) return false
-            if (bAttributes.isNotEmpty()) return false
+            if (!areMultisetsEqual(a.visibleAnnotations, b.visibleAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.invisibleAnnotations, b.invisibleAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.visibleTypeAnnotations, b.visibleTypeAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.invisibleTypeAnnotations, b.invisibleTypeAnnotations) { annotationKey(it) }) return false
+            if (!areMultisetsEqual(a.attrs, b.attrs) { attributeKey(it) }) return false
             return true
         }
     }
@@ -0,0 +1,213 @@
+package xyz.wagyourtail.unimined.internal.mods
+
+import org.gradle.api.Project
+import org.gradle.api.invocation.Gradle
+import org.objectweb.asm.AnnotationVisitor
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.FieldVisitor
+import org.objectweb.asm.Handle
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import xyz.wagyourtail.unimined.api.unimined
+import xyz.wagyourtail.unimined.util.forEachInZip
+import xyz.wagyourtail.unimined.util.getSha1
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.io.path.createDirectories
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.exists
+import kotlin.io.path.readLines
+import kotlin.io.path.writeLines
+
+/**
+ * which classes each mod defines and references, to tell which other mods a mod's remapped output depends on.
+ *
+ * a mod's members are mapped through the hierarchy of the classes it extends, implements, targets with mixins
+ * or accesses members of, so a mod only depends on the mods defining those classes, and on what those depend on.
+ * each mod is read once, by digest, and kept in [directory].
+ */
+class ModReferenceIndex(private val directory: Path) {
+
+    companion object {
+        private val indexes = WeakHashMap<Gradle, ModReferenceIndex>()
+
+        @Synchronized
+        fun get(project: Project): ModReferenceIndex {
+            return indexes.getOrPut(project.gradle) {
+                ModReferenceIndex(project.unimined.getGlobalCache().resolve("mod-references"))
+            }
+        }
+
+        private val DESCRIPTOR = Regex("L([^;<>]+);")
+    }
+
+    class References(val defined: Set<String>, val referenced: Set<String>)
+
+    private val references = ConcurrentHashMap<String, References>()
+
+    /**
+     * for each of [mods], the digests of the other mods it depends on, sorted.
+     */
+    fun dependencies(mods: Collection<Path>): Map<Path, List<String>> {
+        val refs = mods.associateWith { of(it) }
+        val definedBy = mutableMapOf<String, MutableSet<Path>>()
+        for ((mod, ref) in refs) {
+            for (name in ref.defined) {
+                definedBy.getOrPut(name) { mutableSetOf() }.add(mod)
+            }
+        }
+        val direct = refs.mapValues { (mod, ref) ->
+            ref.referenced.flatMapTo(mutableSetOf()) { definedBy[it] ?: emptySet() } - mod
+        }
+        return mods.associateWith { mod ->
+            val seen = mutableSetOf(mod)
+            val queue = ArrayDeque(direct.getValue(mod))
+            while (queue.isNotEmpty()) {
+                val next = queue.removeFirst()
+                if (seen.add(next)) queue.addAll(direct.getValue(next))
+            }
+            (seen - mod).map { it.getSha1() }.sorted()
+        }
+    }
+
+    /**
+     * the classes [jar] defines and references, from memory or [directory] if possible, read from the jar otherwise.
+     */
+    fun of(jar: Path): References {
+        return references.computeIfAbsent(jar.getSha1()) { sha1 ->
+            val file = directory.resolve("$sha1.txt")
+            (if (file.exists()) {
+                try {
+                    read(file)
+                } catch (e: IOException) {
+                    null
+                }
+            } else null) ?: build(jar).also {
+                try {
+                    write(file, it)
+                } catch (e: IOException) {
+                    // keep it in memory only
+                }
+            }
+        }
+    }
+
+    fun build(jar: Path): References {
+        val defined = mutableSetOf<String>()
+        val referenced = mutableSetOf<String>()
+        jar.forEachInZip { path, stream ->
+            if (!path.endsWith(".class")) return@forEachInZip
+            val reader = ClassReader(stream)
+            defined.add(reader.className)
+            reader.accept(ReferenceVisitor(referenced), ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+        }
+        return References(defined, referenced - defined)
+    }
+
+    private fun read(file: Path): References? {
+        val lines = file.readLines()
+        if (lines.isEmpty() || lines.last() != "end") return null
+        val defined = mutableSetOf<String>()
+        val referenced = mutableSetOf<String>()
+        for (line in lines.dropLast(1)) {
+            when (line.firstOrNull()) {
+                'd' -> defined.add(line.substring(2))
+                'r' -> referenced.add(line.substring(2))
+                else -> return null
+            }
+        }
+        return References(defined, referenced)
+    }
+
+    private fun write(file: Path, references: References) {
+        file.parent.createDirectories()
+        val temp = Files.createTempFile(file.parent, file.fileName.toString(), ".tmp")
+        try {
+            temp.writeLines(references.defined.map { "d $it" } + references.referenced.map { "r $it" } + "end")
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+
+    private class ReferenceVisitor(val referenced: MutableSet<String>) : ClassVisitor(Opcodes.ASM9) {
+
+        fun addType(type: Type) {
+            when (type.sort) {
+                Type.OBJECT -> referenced.add(type.internalName)
+                Type.ARRAY -> addType(type.elementType)
+                Type.METHOD -> {
+                    type.argumentTypes.forEach { addType(it) }
+                    addType(type.returnType)
+                }
+            }
+        }
+
+        fun addConstant(value: Any?) {
+            when (value) {
+                is Type -> addType(value)
+                is Handle -> referenced.add(value.owner)
+            }
+        }
+
+        val annotationVisitor: AnnotationVisitor = object : AnnotationVisitor(Opcodes.ASM9) {
+            override fun visit(name: String?, value: Any?) {
+                if (value is String) {
+                    // mixin targets and injection points
+                    if (value.none { it.isWhitespace() }) referenced.add(value.replace('.', '/'))
+                    DESCRIPTOR.findAll(value).forEach { referenced.add(it.groupValues[1]) }
+                } else {
+                    addConstant(value)
+                }
+            }
+
+            override fun visitAnnotation(name: String?, descriptor: String): AnnotationVisitor = this
+
+            override fun visitArray(name: String?): AnnotationVisitor = this
+        }
+
+        override fun visit(version: Int, access: Int, name: String, signature: String?, superName: String?, interfaces: Array<out String>?) {
+            superName?.let { referenced.add(it) }
+            interfaces?.let { referenced.addAll(it) }
+        }
+
+        override fun visitAnnotation(descriptor: String, visible: Boolean) = annotationVisitor
+
+        override fun visitField(access: Int, name: String, descriptor: String, signature: String?, value: Any?): FieldVisitor {
+            return object : FieldVisitor(Opcodes.ASM9) {
+                override fun visitAnnotation(descriptor: String, visible: Boolean) = annotationVisitor
+            }
+        }
+
+        override fun visitMethod(access: Int, name: String, descriptor: String, signature: String?, exceptions: Array<out String>?): MethodVisitor {
+            return object : MethodVisitor(Opcodes.ASM9) {
+                override fun visitAnnotation(descriptor: String, visible: Boolean) = annotationVisitor
+
+                override fun visitTypeInsn(opcode: Int, type: String) {
+                    addType(Type.getObjectType(type))
+                }
+
+                override fun visitFieldInsn(opcode: Int, owner: String, name: String, descriptor: String) {
+                    referenced.add(owner)
+                }
+
+                override fun visitMethodInsn(opcode: Int, owner: String, name: String, descriptor: String, isInterface: Boolean) {
+                    addType(Type.getObjectType(owner))
+                }
+
+                override fun visitInvokeDynamicInsn(name: String, descriptor: String, bootstrapMethodHandle: Handle, vararg bootstrapMethodArguments: Any?) {
+                    referenced.add(bootstrapMethodHandle.owner)
+                    bootstrapMethodArguments.forEach { addConstant(it) }
+                }
+
+                override fun visitLdcInsn(value: Any?) = addConstant(value)
+            }
+        }
+    }
+}
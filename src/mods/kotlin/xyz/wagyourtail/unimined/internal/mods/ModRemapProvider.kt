@@ -4,6 +4,7 @@ import com.google.gson.GsonBuilder
 import com.google.gson.JsonParser
 import net.fabricmc.loom.util.kotlin.KotlinClasspathService
 import net.fabricmc.loom.util.kotlin.KotlinRemapperClassloader
+import net.fabricmc.tinyremapper.IMappingProvider
 import net.fabricmc.tinyremapper.InputTag
 import net.fabricmc.tinyremapper.NonClassCopyMode
 import net.fabricmc.tinyremapper.OutputConsumerPath
@@ -19,6 +20,7 @@ import xyz.wagyourtail.unimined.api.minecraft.MinecraftConfig
 import xyz.wagyourtail.unimined.api.minecraft.patch.forge.ForgeLikePatcher
 import xyz.wagyourtail.unimined.api.mod.ModRemapConfig
 import xyz.wagyourtail.unimined.api.unimined
+import xyz.wagyourtail.unimined.internal.mapping.RemapClasspathService
 import xyz.wagyourtail.unimined.internal.mapping.at.AccessTransformerApplier
 import xyz.wagyourtail.unimined.internal.mapping.aw.AccessWidenerApplier
 import xyz.wagyourtail.unimined.internal.mapping.extension.MixinRemapExtension
@@ -26,13 +28,21 @@ import xyz.wagyourtail.unimined.util.*
 import java.io.*
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.StandardCopyOption
 import java.nio.file.StandardOpenOption
+import java.util.UUID
 import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executors
 import java.util.jar.JarFile
 import kotlin.io.path.createDirectories
 import kotlin.io.path.deleteIfExists
 import kotlin.io.path.exists
+import kotlin.io.path.extension
+import kotlin.io.path.isRegularFile
 import kotlin.io.path.name
+import kotlin.io.path.readText
+import kotlin.io.path.writeText
 
 class ModRemapProvider(config: Set<Configuration>, val project: Project, val provider: MinecraftConfig) : ModRemapConfig(config) {
 
@@ -59,12 +69,15 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
     }
 
     override var remapAtToLegacy: Boolean by FinalizeOnRead(LazyMutable { (provider.mcPatcher as? ForgeLikePatcher<*>)?.remapAtToLegacy == true })
+
     override fun mixinRemap(action: MixinRemapOptions.() -> Unit) {
         mixinRemap = action
     }
 
+    private val defaultTinyRemapSettings: TinyRemapper.Builder.() -> Unit = {}
+
     var mixinRemap: MixinRemapOptions.() -> Unit by FinalizeOnRead {}
-    var tinyRemapSettings: TinyRemapper.Builder.() -> Unit by FinalizeOnRead {}
+    var tinyRemapSettings: TinyRemapper.Builder.() -> Unit by FinalizeOnRead(defaultTinyRemapSettings)
 
     var config: Configuration.() -> Unit by FinalizeOnRead {
         exclude(
@@ -124,11 +137,12 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
     private fun constructRemapper(
         fromNs: MappingNamespaceTree.Namespace,
         toNs: MappingNamespaceTree.Namespace,
-        mc: Path
+        mc: Path,
+        mappings: ((IMappingProvider.MappingAcceptor) -> Unit)? = null
     ): CompletableFuture<Pair<TinyRemapper, MixinRemapExtension>> {
         val remapperB = TinyRemapper.newRemapper()
             .withMappings(
-                provider.mappings.getTRMappings(
+                mappings ?: provider.mappings.getTRMappings(
                     fromNs to toNs,
                     false
                 )
@@ -150,9 +164,9 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
 
         tinyRemapSettings(remapperB)
         val remapper = remapperB.build()
+        val libraries = provider.minecraftLibraries.files.map { it.toPath() }
         val future = mixinExtension.readClassPath(remapper,
-                *(provider.minecraftLibraries.files.map { it.toPath() } + listOf(mc))
-                    .toTypedArray()
+                *RemapClasspathService.get(project).classpath(libraries + listOf(mc), libraries)
             )
         return future.thenApply { remapper to mixinExtension }
     }
@@ -161,6 +175,12 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
         tinyRemapSettings = remapperBuilder
     }
 
+    /**
+     * custom remapper settings can't be part of a remap key, so their outputs aren't shared between projects.
+     */
+    private val customRemapper: Boolean
+        get() = tinyRemapSettings !== defaultTinyRemapSettings
+
     fun doRemap(
         devNamespace: MappingNamespaceTree.Namespace = provider.mappings.devNamespace,
         devFallbackNamespace: MappingNamespaceTree.Namespace = provider.mappings.devFallbackNamespace,
@@ -193,22 +213,37 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
             for (map in originalDepsFiles.values) {
                 mods.putAll(map)
             }
+            // remap straight to the last namespace in a single pass if the path composes
+            val composed = if (path.size > 1) {
+                provider.mappings.getComposedTRMappings(listOf(namespace) + path)
+            } else null
+            val steps = if (composed != null) listOf(path.last()) else path
             var prevNamespace = namespace
             var prevPrevNamespace = fallbackNamespace
-            for (i in path.indices) {
-                val step = path[i]
+            for (i in steps.indices) {
+                val step = steps[i]
                 val mcNamespace = prevNamespace
                 val mcFallbackNamespace = prevPrevNamespace
                 val mc = provider.getMinecraft(
                     mcNamespace,
                     mcFallbackNamespace
                 )
-                val namespaceKey = "${step}-${prevNamespace}"
+                // keep the output name of the last step, so the remapped mods resolve the same either way
+                val namespaceKey = if (composed != null) {
+                    "${step}-${path[path.size - 2]}"
+                } else {
+                    "${step}-${prevNamespace}"
+                }
                 val forceReload = project.unimined.forceReload
+                val classpathKey = classpathKey(mc)
+                val dependencies = ModReferenceIndex.get(project).dependencies(mods.values.map { it.toPath() })
+                val keys = mods.mapValues {
+                    remapKey(it.value, classpathKey, dependencies.getValue(it.value.toPath()), prevNamespace to step, composed != null)
+                }
                 val targets = mods.mapValues {
                     it.value to (provider.mods as ModsProvider).modTransformFolder()
                         .resolve("${it.key.file.nameWithoutExtension}-mapped-${provider.mappings.combinedNames}-${namespaceKey}.${it.key.file.extension}")
-                        .let { it to (it.exists() && !forceReload) }
+                        .let { target -> target to (!forceReload && (isRemapped(target, keys.getValue(it.key)) || fetchRemapped(target, keys.getValue(it.key)))) }
                 }
                 project.logger.info("[Unimined/ModRemapper] Remapping Mods $step: ")
                 if (targets.values.none { !it.second.second }) {
@@ -222,13 +257,14 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
                 for (mod in targets) {
                     project.logger.info("[Unimined/ModRemapper]  ${if (mod.value.second.second) "skipping" else "        " } ${mod.value.first} -> ${mod.value.second.first}")
                 }
-                val remapper = constructRemapper(prevNamespace, step, mc)
+                val remapper = constructRemapper(prevNamespace, step, mc, composed)
                 val tags = preRemapInternal(remapper, targets)
                 mods.clear()
                 mods.putAll(
                     remapInternal(
                         remapper.join(),
                         tags.join().nonNullValues(),
+                        keys,
                         prevNamespace to step
                     )
                 )
@@ -294,25 +330,218 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
         return CompletableFuture.allOf(*futures.toTypedArray()).thenApply { output }
     }
 
+    /**
+     * fingerprint of what every mod is remapped against, minecraft and its libraries.
+     */
+    private fun classpathKey(mc: Path): String {
+        val classpath = listOf(mc) + provider.minecraftLibraries.files.map { it.toPath() }
+        return classpath.joinToString(",") { if (it.isRegularFile()) it.getSha1() else it.toString() }
+    }
+
+    /**
+     * key of a remapped mod, changes with the mod's content, the mappings, the classpath and the other mods whose
+     * classes it is mapped through, [dependencies] from [ModReferenceIndex].
+     */
+    private fun remapKey(
+        mod: File,
+        classpathKey: String,
+        dependencies: List<String>,
+        remap: Pair<MappingNamespaceTree.Namespace, MappingNamespaceTree.Namespace>,
+        composed: Boolean
+    ): String {
+        return linkedMapOf(
+            "mod" to mod.getSha1(),
+            "mappings" to provider.mappings.combinedNames,
+            "remap" to "${remap.first}->${remap.second}${if (composed) " (composed)" else ""}",
+            "remapAtToLegacy" to remapAtToLegacy.toString(),
+            "catchAWNs" to catchAWNs.toString(),
+            "kotlin" to (KotlinClasspathService.getOrCreateIfRequired(project)?.version() ?: "none"),
+            "mixin" to mixinRemapState,
+            "remapper" to (if (customRemapper) tinyRemapSettings.javaClass.name else "default"),
+            "classpath" to classpathKey,
+            "dependencies" to dependencies.joinToString(",")
+        ).getSha1()
+    }
+
+    /**
+     * the mixin settings mods are remapped with, [mixinRemap] applied on top of the defaults of [constructRemapper].
+     */
+    private val mixinRemapState by lazy {
+        MixinRemapState().apply {
+            enableBaseMixin()
+            mixinRemap(this)
+        }.toString()
+    }
+
+    /**
+     * records what [MixinRemapOptions] would enable on a [MixinRemapExtension], so it can be part of a remap key.
+     */
+    private class MixinRemapState : MixinRemapOptions {
+        private var off = false
+        private var noRefmap = setOf<String>()
+        private val metadataReader = mutableListOf<String>()
+        private val hardRemapper = mutableListOf<String>()
+        private val refmapBuilder = mutableListOf<String>()
+
+        override fun enableMixinExtra() {
+            refmapBuilder.add("MixinExtra")
+        }
+
+        override fun enableBaseMixin() {
+            metadataReader.add("BaseMixin")
+            hardRemapper.add("BaseMixin")
+            refmapBuilder.add("BaseMixin")
+        }
+
+        override fun enableJarModAgent() {
+            metadataReader.add("JarModAgent")
+            hardRemapper.add("JarModAgent")
+            refmapBuilder.add("JarModAgent")
+        }
+
+        override fun reset() {
+            off = false
+            noRefmap = setOf()
+            resetMetadataReader()
+            resetHardRemapper()
+            resetRefmapBuilder()
+        }
+
+        override fun resetMetadataReader() {
+            metadataReader.clear()
+        }
+
+        override fun resetHardRemapper() {
+            hardRemapper.clear()
+        }
+
+        override fun resetRefmapBuilder() {
+            refmapBuilder.clear()
+        }
+
+        override fun off() {
+            reset()
+            off = true
+        }
+
+        override fun disableRefmap() {
+            disableRefmap(listOf("BaseMixin", "JarModAgent"))
+        }
+
+        override fun disableRefmap(keys: List<String>) {
+            noRefmap = keys.toSet()
+        }
+
+        override fun toString(): String {
+            return "off=$off, noRefmap=${noRefmap.sorted()}, metadata=$metadataReader, hard=$hardRemapper, refmap=$refmapBuilder"
+        }
+    }
+
+    private fun remapKeyFile(target: Path): Path = target.resolveSibling("${target.name}.remapkey")
+
+    private fun isRemapped(target: Path, key: String): Boolean {
+        val keyFile = remapKeyFile(target)
+        return target.exists() && keyFile.exists() && keyFile.readText() == key
+    }
+
+    /**
+     * remapped mods shared by every project using the global cache, by remap key, unless a custom remapper is set.
+     * the key covers the mods the jar was mapped through, so a jar is only reused by projects with the same versions
+     * of those. entries written before the key covered them are in the unversioned folder, and never read.
+     */
+    private fun sharedRemapped(target: Path, key: String): Path? {
+        if (customRemapper) return null
+        return project.unimined.getGlobalCache().resolve("remapped-mods").resolve("v2").createDirectories().resolve("$key.${target.extension}")
+    }
+
+    /**
+     * link or copy an already remapped mod from the global cache to [target].
+     */
+    private fun fetchRemapped(target: Path, key: String): Boolean {
+        val shared = sharedRemapped(target, key) ?: return false
+        if (!shared.exists()) return false
+        project.logger.info("[Unimined/ModRemapper] Reusing $shared for $target")
+        target.deleteIfExists()
+        linkOrCopy(shared, target)
+        remapKeyFile(target).writeText(key)
+        return true
+    }
+
+    /**
+     * put a freshly remapped mod in the global cache, other writers of the same key produce the same jar.
+     */
+    private fun publishRemapped(target: Path, key: String) {
+        val shared = sharedRemapped(target, key) ?: return
+        val temp = shared.resolveSibling("${shared.name}.${UUID.randomUUID()}.tmp")
+        try {
+            linkOrCopy(target, temp)
+            Files.move(temp, shared, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } catch (e: IOException) {
+            project.logger.warn("[Unimined/ModRemapper] Failed to share $target in the global cache", e)
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+
+    /**
+     * outputs are never modified in place, they're deleted before being written again, so hard links are safe.
+     */
+    private fun linkOrCopy(from: Path, to: Path) {
+        try {
+            Files.createLink(to, from)
+        } catch (e: Exception) {
+            // different file stores or no hard link support
+            Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING)
+        }
+    }
+
     private fun ResolvedArtifact.stringify() = "${this.moduleVersion.id.group}:${this.name}:${this.moduleVersion.id.version}${this.classifier?.let { ":$it" } ?: ""}${this.extension?.let { "@$it" } ?: ""}"
 
     private fun remapInternal(
         remapper: Pair<TinyRemapper, MixinRemapExtension>,
         deps: Map<ResolvedArtifact, Pair<InputTag, Pair<File, Path>>>,
+        keys: Map<ResolvedArtifact, String>,
         remap: Pair<MappingNamespaceTree.Namespace, MappingNamespaceTree.Namespace>
     ): Map<ResolvedArtifact, File> {
         val output = mutableMapOf<ResolvedArtifact, File>()
         project.logger.info("[Unimined/ModRemapper] Remapping mods to ${remap.first}/${remap.second}")
-        for ((artifact, tag) in deps) {
-            try {
-                remapModInternal(remapper, artifact, tag, remap)
-            } catch (e: Exception) {
-                // delete output
-                tag.second.second.deleteIfExists()
-
-                throw IllegalStateException("Failed to remap ${artifact.stringify()} to ${remap.first}/${remap.second}", e)
+        // analyze the shared environment once, before any mod uses it from another thread
+        remapper.first.environment
+        val applyLock = Any()
+        // own threads, so mods waiting on the apply lock can't starve the common pool
+        val executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors().coerceAtMost(deps.size.coerceAtLeast(1)))
+        val futures = deps.map { (artifact, tag) ->
+            artifact to CompletableFuture.runAsync({
+                val keyFile = remapKeyFile(tag.second.second)
+                try {
+                    keyFile.deleteIfExists()
+                    // may be a stale output or a link into the global cache, never write through it
+                    tag.second.second.deleteIfExists()
+                    remapModInternal(remapper, artifact, tag, remap, applyLock)
+                    keyFile.writeText(keys.getValue(artifact))
+                    publishRemapped(tag.second.second, keys.getValue(artifact))
+                } catch (e: Exception) {
+                    // delete output
+                    tag.second.second.deleteIfExists()
+                    keyFile.deleteIfExists()
+
+                    throw IllegalStateException("Failed to remap ${artifact.stringify()} to ${remap.first}/${remap.second}", e)
+                }
+            }, executor)
+        }
+        try {
+            for ((artifact, future) in futures) {
+                try {
+                    future.join()
+                } catch (e: CompletionException) {
+                    // let the other mods finish writing before failing
+                    futures.forEach { it.second.handle { _, _ -> }.join() }
+                    throw e.cause ?: e
+                }
+                output[artifact] = deps.getValue(artifact).second.second.toFile()
             }
-            output[artifact] = tag.second.second.toFile()
+        } finally {
+            executor.shutdown()
         }
         remapper.first.finish()
         return output
@@ -323,6 +552,7 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
         dep: ResolvedArtifact,
         input: Pair<InputTag, Pair<File, Path>>,
         remap: Pair<MappingNamespaceTree.Namespace, MappingNamespaceTree.Namespace>,
+        applyLock: Any,
     ) {
         val inpFile = input.second.first
         val targetFile = input.second.second
@@ -344,7 +574,10 @@ class ModRemapProvider(config: Set<Configuration>, val project: Project, val pro
                         AccessTransformerApplier.AtRemapper(project.logger, remapAtToLegacy, manifest)
                     ) + NonClassCopyMode.FIX_META_INF.remappers
                 )
-                remapper.first.apply(it, input.first)
+                // the remapper already spreads one mod's classes over every core
+                synchronized(applyLock) {
+                    remapper.first.apply(it, input.first)
+                }
             }
 
             targetFile.openZipFileSystem(mapOf("mutable" to true)).use {
@@ -0,0 +1,189 @@
+package xyz.wagyourtail.unimined.api.mappings
+
+import org.gradle.api.logging.Logging
+import org.junit.jupiter.api.Test
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.FieldNode
+import org.objectweb.asm.tree.InsnNode
+import org.objectweb.asm.tree.MethodInsnNode
+import org.objectweb.asm.tree.MethodNode
+import org.objectweb.asm.tree.VarInsnNode
+import xyz.wagyourtail.unimined.internal.mapping.at.AccessTransformerSet
+import java.nio.file.Files
+import kotlin.io.path.writeText
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class AccessTransformerSetTest {
+
+    private val at = """
+        public net.minecraft.Foo
+        public net.minecraft.Foo field1
+        public-f net.minecraft.Foo field2
+        protected+f net.minecraft.Foo method1()V
+        public net.minecraft.Foo helper()V
+        protected net.minecraft.Foo open()V
+        public net.minecraft.Foo${'$'}Inner
+        public net.minecraft.Itf priv()V
+        public net.minecraft.Wild *
+        public net.minecraft.Wild *()
+    """.trimIndent() + "\n"
+
+    private val set by lazy {
+        val temp = Files.createTempFile("accesstransformer", ".cfg")
+        try {
+            temp.writeText(at)
+            AccessTransformerSet.read(temp)
+        } finally {
+            Files.deleteIfExists(temp)
+        }
+    }
+
+    private fun classNode(name: String, access: Int, build: ClassNode.() -> Unit = {}): ClassNode {
+        val node = ClassNode()
+        node.visit(Opcodes.V1_8, access, name, null, "java/lang/Object", null)
+        node.build()
+        return node
+    }
+
+    private fun ClassNode.method(access: Int, name: String, vararg calls: MethodInsnNode) {
+        val method = MethodNode(access, name, "()V", null, null)
+        if (access and Opcodes.ACC_ABSTRACT == 0) {
+            for (call in calls) {
+                if (call.opcode != Opcodes.INVOKESTATIC) method.instructions.add(VarInsnNode(Opcodes.ALOAD, 0))
+                method.instructions.add(call)
+            }
+            method.instructions.add(InsnNode(Opcodes.RETURN))
+        }
+        methods.add(method)
+    }
+
+    private fun ClassNode.field(access: Int, name: String) {
+        fields.add(FieldNode(access, name, "I", null, null))
+    }
+
+    private fun transform(node: ClassNode): ClassNode {
+        val writer = ClassWriter(ClassWriter.COMPUTE_MAXS)
+        node.accept(writer)
+        val result = ClassNode()
+        val visitor = set.classTransform(Logging.getLogger(AccessTransformerSetTest::class.java)).visitor(node.name, result)
+        ClassReader(writer.toByteArray()).accept(visitor, 0)
+        return result
+    }
+
+    private fun ClassNode.fieldAccess(name: String) = fields.single { it.name == name }.access
+
+    private fun ClassNode.methodAccess(name: String) = methods.single { it.name == name }.access
+
+    private fun ClassNode.calls(name: String) = methods.single { it.name == name }.instructions.filterIsInstance<MethodInsnNode>()
+
+    private fun visibility(access: Int) = access and (Opcodes.ACC_PUBLIC or Opcodes.ACC_PROTECTED or Opcodes.ACC_PRIVATE)
+
+    private val foo = classNode("net/minecraft/Foo", Opcodes.ACC_SUPER) {
+        field(Opcodes.ACC_PRIVATE, "field1")
+        field(Opcodes.ACC_PRIVATE or Opcodes.ACC_FINAL, "field2")
+        field(Opcodes.ACC_PRIVATE, "untouched")
+        method(Opcodes.ACC_PRIVATE, "method1")
+        method(Opcodes.ACC_PRIVATE, "helper")
+        method(Opcodes.ACC_PRIVATE, "other")
+        method(Opcodes.ACC_PUBLIC, "open")
+        method(
+            Opcodes.ACC_PUBLIC, "caller",
+            MethodInsnNode(Opcodes.INVOKESPECIAL, "net/minecraft/Foo", "helper", "()V", false),
+            MethodInsnNode(Opcodes.INVOKESPECIAL, "net/minecraft/Foo", "other", "()V", false)
+        )
+        visitInnerClass("net/minecraft/Foo\$Inner", "net/minecraft/Foo", "Inner", Opcodes.ACC_PRIVATE or Opcodes.ACC_STATIC)
+    }
+
+    @Test
+    fun targets() {
+        assertEquals(
+            setOf("net/minecraft/Foo", "net/minecraft/Foo\$Inner", "net/minecraft/Itf", "net/minecraft/Wild"),
+            set.targets
+        )
+    }
+
+    @Test
+    fun classAccess() {
+        val result = transform(foo)
+        assertEquals(Opcodes.ACC_PUBLIC or Opcodes.ACC_SUPER, result.access)
+    }
+
+    @Test
+    fun fields() {
+        val result = transform(foo)
+        assertEquals(Opcodes.ACC_PUBLIC, result.fieldAccess("field1"))
+        // -f
+        assertEquals(Opcodes.ACC_PUBLIC, result.fieldAccess("field2"))
+        assertEquals(Opcodes.ACC_PRIVATE, result.fieldAccess("untouched"))
+    }
+
+    @Test
+    fun methods() {
+        val result = transform(foo)
+        // +f
+        assertEquals(Opcodes.ACC_PROTECTED or Opcodes.ACC_FINAL, result.methodAccess("method1"))
+        assertEquals(Opcodes.ACC_PUBLIC, result.methodAccess("helper"))
+        assertEquals(Opcodes.ACC_PRIVATE, result.methodAccess("other"))
+        // never narrowed
+        assertEquals(Opcodes.ACC_PUBLIC, result.methodAccess("open"))
+    }
+
+    @Test
+    fun invokeSpecial() {
+        val result = transform(foo)
+        val calls = result.calls("caller")
+        assertEquals(Opcodes.INVOKEVIRTUAL, calls.single { it.name == "helper" }.opcode)
+        assertEquals(Opcodes.INVOKESPECIAL, calls.single { it.name == "other" }.opcode)
+    }
+
+    @Test
+    fun invokeSpecialInterface() {
+        val itf = classNode("net/minecraft/Itf", Opcodes.ACC_PUBLIC or Opcodes.ACC_INTERFACE or Opcodes.ACC_ABSTRACT) {
+            method(Opcodes.ACC_PRIVATE, "priv")
+            method(
+                Opcodes.ACC_PUBLIC, "caller",
+                MethodInsnNode(Opcodes.INVOKESPECIAL, "net/minecraft/Itf", "priv", "()V", true)
+            )
+        }
+        val result = transform(itf)
+        assertEquals(Opcodes.ACC_PUBLIC, result.methodAccess("priv"))
+        val call = result.calls("caller").single()
+        assertEquals(Opcodes.INVOKEINTERFACE, call.opcode)
+        assertTrue(call.itf)
+    }
+
+    @Test
+    fun innerClass() {
+        // the outer class's InnerClasses entry
+        val outer = transform(foo).innerClasses.single { it.name == "net/minecraft/Foo\$Inner" }
+        assertEquals(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, outer.access)
+
+        val inner = classNode("net/minecraft/Foo\$Inner", Opcodes.ACC_SUPER) {
+            visitInnerClass("net/minecraft/Foo\$Inner", "net/minecraft/Foo", "Inner", Opcodes.ACC_PRIVATE or Opcodes.ACC_STATIC)
+        }
+        val result = transform(inner)
+        // class files are only public or package private
+        assertEquals(Opcodes.ACC_PUBLIC or Opcodes.ACC_SUPER, result.access)
+        assertEquals(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, result.innerClasses.single().access)
+    }
+
+    @Test
+    fun wildcards() {
+        val wild = classNode("net/minecraft/Wild", Opcodes.ACC_PUBLIC or Opcodes.ACC_SUPER) {
+            field(Opcodes.ACC_PRIVATE, "a")
+            field(Opcodes.ACC_PROTECTED or Opcodes.ACC_FINAL, "b")
+            method(Opcodes.ACC_PRIVATE, "x")
+            method(0, "y")
+        }
+        val result = transform(wild)
+        assertEquals(Opcodes.ACC_PUBLIC, visibility(result.fieldAccess("a")))
+        assertEquals(Opcodes.ACC_PUBLIC or Opcodes.ACC_FINAL, result.fieldAccess("b"))
+        assertEquals(Opcodes.ACC_PUBLIC, result.methodAccess("x"))
+        assertEquals(Opcodes.ACC_PUBLIC, result.methodAccess("y"))
+    }
+
+}
@@ -0,0 +1,92 @@
+package xyz.wagyourtail.unimined.api.mappings
+
+import net.fabricmc.mappingio.MappedElementKind
+import net.fabricmc.mappingio.format.BinaryMappingReader
+import net.fabricmc.mappingio.format.BinaryMappingWriter
+import net.fabricmc.mappingio.format.Tiny2Reader2
+import net.fabricmc.mappingio.format.Tiny2Writer2
+import net.fabricmc.mappingio.tree.MappingTreeView
+import net.fabricmc.mappingio.tree.MemoryMappingTree
+import org.junit.jupiter.api.Test
+import java.io.IOException
+import java.io.StringWriter
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNotNull
+
+class BinaryMappingTest {
+
+    private val tiny = """
+        tiny	2	0	official	intermediary	named
+        c	a	net/minecraft/class_1	net/minecraft/Foo
+        	c	a class comment
+        	f	I	a	field_1	bar
+        	m	(La;)V	b	method_1	baz
+        		c	a method comment
+        		p	1		arg1	other
+        c	b	net/minecraft/class_2	net/minecraft/Bar
+        	m	()V	c	method_2	qux
+    """.trimIndent() + "\n"
+
+    private fun MappingTreeView.toTiny(): String {
+        val writer = StringWriter()
+        accept(Tiny2Writer2(writer, false))
+        return writer.toString()
+    }
+
+    @Test
+    fun roundTrip() {
+        val tree = MemoryMappingTree()
+        Tiny2Reader2.read(tiny.reader(), tree)
+
+        val temp = Files.createTempFile("mappings", ".umb")
+        try {
+            BinaryMappingWriter.write(tree, temp)
+
+            val read = MemoryMappingTree()
+            BinaryMappingReader.read(temp, read)
+            assertEquals(tree.toTiny(), read.toTiny())
+
+            val file = BinaryMappingReader.open(temp)
+            assertEquals(listOf("intermediary", "named"), file.dstNamespaces)
+            assertEquals(1, file.findClass("b"))
+            assertEquals(-1, file.findClass("c"))
+        } finally {
+            Files.deleteIfExists(temp)
+        }
+    }
+
+    @Test
+    fun methodWithoutDescriptor() {
+        val tree = MemoryMappingTree()
+        tree.visitNamespaces("official", listOf("named"))
+        tree.visitClass("a")
+        tree.visitMethod("b", null)
+        tree.visitDstName(MappedElementKind.METHOD, 0, "named")
+        tree.visitEnd()
+
+        val read = MemoryMappingTree()
+        BinaryMappingReader.read(BinaryMappingWriter.toByteArray(tree), read)
+        val method = assertNotNull(read.getClass("a")?.methods?.single())
+        assertEquals("b", method.srcName)
+        assertEquals(null, method.srcDesc)
+        assertEquals("named", method.getDstName(0))
+    }
+
+    @Test
+    fun corruptClassData() {
+        val tree = MemoryMappingTree()
+        Tiny2Reader2.read(tiny.reader(), tree)
+        val bytes = BinaryMappingWriter.toByteArray(tree)
+        // the last method's variable count
+        ByteBuffer.wrap(bytes).putInt(bytes.size - 4, Int.MAX_VALUE)
+
+        val file = BinaryMappingReader.open(bytes)
+        assertFailsWith<IOException> {
+            file.accept(MemoryMappingTree())
+        }
+    }
+
+}
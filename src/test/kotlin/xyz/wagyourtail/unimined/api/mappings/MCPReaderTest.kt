@@ -0,0 +1,103 @@
+package xyz.wagyourtail.unimined.api.mappings
+
+import net.fabricmc.mappingio.adapter.ForwardingMappingVisitor
+import net.fabricmc.mappingio.format.MCPReader
+import net.fabricmc.mappingio.format.Tiny2Reader2
+import net.fabricmc.mappingio.tree.MemoryMappingTree
+import org.junit.jupiter.api.Test
+import xyz.wagyourtail.unimined.api.minecraft.EnvType
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+
+class MCPReaderTest {
+
+    private val searge = """
+        tiny	2	0	official	searge
+        c	a	net/minecraft/Foo
+        	f	I	a	field_1_a
+        	f	J	c	field_3_c
+        	m	(Lb;)V	b	func_2_b
+        c	b	net/minecraft/Bar
+    """.trimIndent() + "\n"
+
+    private val fields = """
+        searge,name,side,desc
+        field_1_a,bar,2,a field
+        field_3_c,qux,2,
+    """.trimIndent() + "\n"
+
+    private val methods = """
+        searge,name,side,desc
+        func_2_b,baz,2,a method
+    """.trimIndent() + "\n"
+
+    private val params = """
+        param,name,side
+        p_2_1_,arg,2
+    """.trimIndent() + "\n"
+
+    private fun seargeTree() = MemoryMappingTree().also {
+        Tiny2Reader2.read(searge.reader(), it)
+    }
+
+    @Test
+    fun readField() {
+        val out = MemoryMappingTree()
+        MCPReader.readField(EnvType.COMBINED, fields.reader(), "searge", "mcp", seargeTree(), out)
+
+        val mcp = out.getNamespaceId("mcp")
+        val clazz = assertNotNull(out.getClass("net/minecraft/Foo"))
+        assertEquals("bar", clazz.getField("field_1_a", "I")?.getDstName(mcp))
+        assertEquals("a field", clazz.getField("field_1_a", "I")?.comment)
+        assertEquals("qux", clazz.getField("field_3_c", "J")?.getDstName(mcp))
+    }
+
+    @Test
+    fun readMethod() {
+        val out = MemoryMappingTree()
+        MCPReader.readMethod(EnvType.COMBINED, methods.reader(), "searge", "mcp", seargeTree(), out)
+
+        val mcp = out.getNamespaceId("mcp")
+        val clazz = assertNotNull(out.getClass("net/minecraft/Foo"))
+        // descriptors are joined in the searge namespace
+        val method = assertNotNull(clazz.getMethod("func_2_b", "(Lnet/minecraft/Bar;)V"))
+        assertEquals("baz", method.getDstName(mcp))
+        assertEquals("a method", method.comment)
+    }
+
+    @Test
+    fun readParam() {
+        val out = MemoryMappingTree()
+        MCPReader.readParam(EnvType.COMBINED, params.reader(), "searge", "mcp", seargeTree(), out)
+
+        val mcp = out.getNamespaceId("mcp")
+        val method = assertNotNull(out.getClass("net/minecraft/Foo")?.getMethod("func_2_b", "(Lnet/minecraft/Bar;)V"))
+        val arg = method.args.single()
+        assertEquals(1, arg.lvIndex)
+        assertEquals("arg", arg.getDstName(mcp))
+    }
+
+    @Test
+    fun joinIntoSeargeTree() {
+        val tree = seargeTree()
+        val officialFields = """
+            searge,name,side,desc
+            a,bar,2,
+            c,qux,2,
+        """.trimIndent() + "\n"
+
+        // a lookup miss down the chain adds a member to the class being walked
+        val missing = object : ForwardingMappingVisitor(tree) {
+            override fun visitField(srcName: String, srcDesc: String?): Boolean {
+                return super.visitField("${srcName}_missed", srcDesc)
+            }
+        }
+        MCPReader.readField(EnvType.COMBINED, officialFields.reader(), "official", "mcp", tree, missing)
+
+        val mcp = tree.getNamespaceId("mcp")
+        val clazz = assertNotNull(tree.getClass("a"))
+        assertEquals("bar", clazz.getField("a_missed", "I")?.getDstName(mcp))
+        assertEquals("qux", clazz.getField("c_missed", "J")?.getDstName(mcp))
+    }
+
+}
@@ -0,0 +1,97 @@
+package xyz.wagyourtail.unimined.internal.mods
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import xyz.wagyourtail.unimined.util.deleteRecursively
+import xyz.wagyourtail.unimined.util.getSha1
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import kotlin.io.path.outputStream
+import kotlin.test.assertEquals
+
+class ModReferenceIndexTest {
+
+    private val temp = Files.createTempDirectory("mod-references")
+
+    private val index = ModReferenceIndex(temp.resolve("cache"))
+
+    @AfterEach
+    fun cleanup() {
+        temp.deleteRecursively()
+    }
+
+    private fun jar(name: String, vararg classes: Pair<String, ClassWriter.() -> Unit>): Path {
+        val jar = temp.resolve("$name.jar")
+        ZipOutputStream(jar.outputStream()).use { zip ->
+            for ((className, build) in classes) {
+                val writer = ClassWriter(0)
+                writer.build()
+                zip.putNextEntry(ZipEntry("$className.class"))
+                zip.write(writer.toByteArray())
+                zip.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    private fun extending(name: String, superName: String = "java/lang/Object"): Pair<String, ClassWriter.() -> Unit> {
+        val build: ClassWriter.() -> Unit = { visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null) }
+        return name to build
+    }
+
+    private fun mixin(name: String, target: String): Pair<String, ClassWriter.() -> Unit> {
+        val build: ClassWriter.() -> Unit = {
+            visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null)
+            visitAnnotation("Lorg/spongepowered/asm/mixin/Mixin;", false).apply {
+                visitArray("value").apply {
+                    visit(null, Type.getObjectType(target))
+                    visitEnd()
+                }
+                visitEnd()
+            }
+        }
+        return name to build
+    }
+
+    @Test
+    fun references() {
+        val api = jar("api", extending("api/Base"))
+        val mod = jar("mod", extending("mod/Impl", "api/Base"), mixin("mod/MixinTarget", "lib/Target"))
+
+        val refs = index.of(mod)
+        assertEquals(setOf("mod/Impl", "mod/MixinTarget"), refs.defined)
+        assertEquals(setOf("java/lang/Object", "api/Base", "lib/Target"), refs.referenced)
+
+        // read back from the cache directory
+        assertEquals(refs.referenced, ModReferenceIndex(temp.resolve("cache")).of(mod).referenced)
+        assertEquals(setOf("api/Base"), index.of(api).defined)
+    }
+
+    @Test
+    fun addingAModKeepsOtherDependencies() {
+        val lib = jar("lib", extending("lib/Target"), extending("lib/Base"))
+        val api = jar("api", extending("api/Base", "lib/Base"))
+        val mod = jar("mod", extending("mod/Impl", "api/Base"))
+        val mixins = jar("mixins", mixin("mixins/LibMixin", "lib/Target"))
+
+        val before = index.dependencies(listOf(lib, api, mod, mixins))
+        assertEquals(emptyList<String>(), before.getValue(lib))
+        assertEquals(listOf(lib.getSha1()), before.getValue(api))
+        // through api's hierarchy
+        assertEquals(listOf(lib.getSha1(), api.getSha1()).sorted(), before.getValue(mod))
+        assertEquals(listOf(lib.getSha1()), before.getValue(mixins))
+
+        val other = jar("other", extending("other/Thing"), extending("other/Impl", "api/Base"))
+        val after = index.dependencies(listOf(lib, api, mod, mixins, other))
+        for (jar in listOf(lib, api, mod, mixins)) {
+            assertEquals(before.getValue(jar), after.getValue(jar))
+        }
+        assertEquals(listOf(lib.getSha1(), api.getSha1()).sorted(), after.getValue(other))
+    }
+
+}